@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.contentparser;
+
+import com.nanocrawler.data.Page;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.mozilla.universalchardet.UniversalDetector;
+
+// Resolves the charset of page content cheaply: byte order mark first, then the charset of the Content-Type header,
+// then a <meta> declaration near the start of HTML pages. Only if none of these is there, the charset is detected
+// statistically from a bounded sample of the content
+public class CharsetResolver {
+
+    // Number of bytes scanned for a <meta> charset declaration
+    private static final int META_PRESCAN_LENGTH = 4096;
+
+    // Maximum number of bytes the statistical detection is run on, and the chunk size it is fed in
+    private static final int DETECTION_SAMPLE_LENGTH = 32768;
+    private static final int DETECTION_CHUNK_LENGTH = 4096;
+
+    // Both <meta charset="..."> and <meta http-equiv="Content-Type" content="text/html; charset=...">
+    private static final Pattern META_CHARSET = Pattern.compile("<meta[^>]*?charset\\s*=\\s*[\"']?\\s*([a-z0-9_:.+-]+)", Pattern.CASE_INSENSITIVE);
+
+    // Detectors are reset and reused by the thread
+    private static final ThreadLocal<UniversalDetector> detectors = ThreadLocal.withInitial(() -> new UniversalDetector(null));
+
+    // Returns the charset of the page content, platform default if it cannot be resolved. Resolved charset is set to
+    // the page too. HTML pages are scanned for a <meta> declaration
+    public static Charset resolve(Page page, boolean html) {
+        byte[] data = page.getContentData();
+
+        Charset charset = getBomCharset(data);
+        if (charset == null) {
+            charset = forName(page.getContentCharset());
+        }
+        if (charset == null && html) {
+            charset = getMetaCharset(data);
+        }
+        if (charset == null) {
+            charset = forName(detect(data));
+        }
+
+        if (charset == null) {
+            return Charset.defaultCharset();
+        }
+        page.setContentCharset(charset.name());
+        return charset;
+    }
+
+    // Returns length of the byte order mark the data starts with, 0 if there is none
+    public static int getBomLength(byte[] data) {
+        if (data.length >= 3 && (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF) {
+            return 3;
+        }
+        if (data.length >= 2 && (((data[0] & 0xFF) == 0xFE && (data[1] & 0xFF) == 0xFF) || ((data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xFE))) {
+            return 2;
+        }
+        return 0;
+    }
+
+    // Returns the charset of the byte order mark the data starts with, null if there is none
+    private static Charset getBomCharset(byte[] data) {
+        switch (getBomLength(data)) {
+            case 3:
+                return StandardCharsets.UTF_8;
+            case 2:
+                return (data[0] & 0xFF) == 0xFE ? StandardCharsets.UTF_16BE : StandardCharsets.UTF_16LE;
+            default:
+                return null;
+        }
+    }
+
+    // Returns the charset declared by a <meta> element in the beginning of the data, null if there is none
+    private static Charset getMetaCharset(byte[] data) {
+        String head = new String(data, 0, Math.min(data.length, META_PRESCAN_LENGTH), StandardCharsets.ISO_8859_1);
+        Matcher matcher = META_CHARSET.matcher(head);
+        if (!matcher.find()) {
+            return null;
+        }
+        Charset charset = forName(matcher.group(1));
+        // Document that can be scanned for ASCII is not UTF-16, the declaration means UTF-8 then
+        if (charset != null && charset.name().startsWith("UTF-16")) {
+            return StandardCharsets.UTF_8;
+        }
+        return charset;
+    }
+
+    // Runs statistical detection on the beginning of the data, returns null if nothing was detected
+    private static String detect(byte[] data) {
+        UniversalDetector detector = detectors.get();
+        detector.reset();
+        try {
+            int length = Math.min(data.length, DETECTION_SAMPLE_LENGTH);
+            for (int offset = 0; offset < length && !detector.isDone(); offset += DETECTION_CHUNK_LENGTH) {
+                detector.handleData(data, offset, Math.min(DETECTION_CHUNK_LENGTH, length - offset));
+            }
+            detector.dataEnd();
+            return detector.getDetectedCharset();
+        } finally {
+            detector.reset();
+        }
+    }
+
+    // Returns the named charset, null if the name is null or not supported
+    private static Charset forName(String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return Charset.forName(name.trim());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -25,7 +25,15 @@ import com.nanocrawler.util.CrawlConfig;
 import com.nanocrawler.urlmanipulation.URLCanonicalizer;
 import com.nanocrawler.urlmanipulation.WebURL;
 
+import java.io.CharArrayReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -33,11 +41,11 @@ import nu.validator.htmlparser.common.DoctypeExpectation;
 import nu.validator.htmlparser.common.Heuristics;
 import nu.validator.htmlparser.common.XmlViolationPolicy;
 import nu.validator.htmlparser.dom.HtmlDocumentBuilder;
-import org.apache.commons.io.IOUtils;
-import org.mozilla.universalchardet.UniversalDetector;
+import nu.validator.htmlparser.sax.HtmlParser;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 // Parses HTML content (default content parser) using Validator.nu HTML parser
@@ -58,6 +66,16 @@ public class HtmlContentParser implements ContentParser {
 
     private CrawlConfig config = null;
 
+    // Parsers are configured once and reused for all the pages, the content parser is confined to a single crawler
+    // thread like the Parser owning it. They are dropped after a failed parse so that no state is carried over
+    private HtmlDocumentBuilder documentBuilder = null;
+    private HtmlParser streamingParser = null;
+    private final HtmlLinkExtractor linkExtractor = new HtmlLinkExtractor();
+
+    // Decoder of the last used charset and the buffer the content is decoded to, grown to the largest page seen
+    private CharsetDecoder decoder = null;
+    private CharBuffer decodeBuffer = null;
+
     // Constructor
     public HtmlContentParser(CrawlConfig config) {
         this.config = config;
@@ -69,30 +87,74 @@ public class HtmlContentParser implements ContentParser {
         return true;
     }
 
-    // Parses the web page using Validator.nu parser
-    private Document parseHtml(Page page, HtmlContent c) throws SAXException, IOException {
-        String html;
-
-        // Handle char type conversions based on the byte stream, not based on what the server says
-        UniversalDetector detector = new UniversalDetector(null);
-        detector.handleData(page.getContentData(), 0, page.getContentData().length);
-        detector.dataEnd();
-        String encoding = detector.getDetectedCharset();
-
-        if (encoding != null) {
-            page.setContentCharset(encoding);
-            try {
-                html = new String(page.getContentData(), encoding);
-            } catch (Exception ex) {
-                html = new String(page.getContentData());
-            }
-        } else {
-            html = new String(page.getContentData());
+    // Returns input for the parser decoding the page content once, straight from the bytes. The html string and
+    // the lazy text of the content are only created if they are asked for
+    private InputSource decodeHtml(Page page, HtmlContent c) {
+        Charset charset = CharsetResolver.resolve(page, true);
+        byte[] data = page.getContentData();
+        int bomLength = CharsetResolver.getBomLength(data);
+
+        if (config.isRetainHtml()) {
+            c.setHtml(data, charset);
+        }
+        if (config.getHtmlTextMode() == CrawlConfig.HtmlTextMode.LAZY) {
+            c.setText(() -> extractText(data, bomLength, charset));
+        }
+        return new InputSource(decode(data, bomLength, charset));
+    }
+
+    // Extracts the body text of the page with a parser of its own, as the text may be asked for in any thread
+    private static String extractText(byte[] data, int offset, Charset charset) {
+        HtmlLinkExtractor extractor = new HtmlLinkExtractor();
+        try {
+            createStreamingParser(extractor).parse(new InputSource(new StringReader(new String(data, offset, data.length - offset, charset))));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return extractor.getText();
+    }
+
+    // Decodes the content to the reusable buffer, malformed input is replaced like when creating a string
+    private Reader decode(byte[] data, int offset, Charset charset) {
+        if (decoder == null || !decoder.charset().equals(charset)) {
+            decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        int capacity = (int) ((data.length - offset) * (double) decoder.maxCharsPerByte()) + 1;
+        if (decodeBuffer == null || decodeBuffer.capacity() < capacity) {
+            decodeBuffer = CharBuffer.allocate(capacity);
         }
 
-        html = html.trim();
-        c.setHtml(html);
+        decodeBuffer.clear();
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(data, offset, data.length - offset), decodeBuffer, true);
+        decoder.flush(decodeBuffer);
+        return new CharArrayReader(decodeBuffer.array(), 0, decodeBuffer.position());
+    }
+
+    // Parses the web page to a document tree using Validator.nu parser
+    private Document parseHtml(InputSource input) throws SAXException, IOException {
+        if (documentBuilder == null) {
+            documentBuilder = createDocumentBuilder();
+        }
 
+        Document doc;
+        try {
+            doc = documentBuilder.parse(input);
+        } catch (SAXException | IOException | RuntimeException e) {
+            documentBuilder = null;
+            throw e;
+        }
+        if (doc.getElementsByTagName(BODY_ELEMENT).getLength() == 0) {
+            throw new RuntimeException("Problem parsing document - invalid HTML, no body element found");
+        }
+
+        return doc;
+    }
+
+    // Creates and configures the document tree builder
+    private HtmlDocumentBuilder createDocumentBuilder() {
         HtmlDocumentBuilder builder = new HtmlDocumentBuilder();
         builder.setCommentPolicy(XmlViolationPolicy.ALTER_INFOSET);
         builder.setContentNonXmlCharPolicy(XmlViolationPolicy.ALTER_INFOSET);
@@ -108,13 +170,42 @@ public class HtmlContentParser implements ContentParser {
         builder.setIgnoringComments(true);
         builder.setScriptingEnabled(true);
         builder.setXmlPolicy(XmlViolationPolicy.ALTER_INFOSET);
+        return builder;
+    }
 
-        Document doc = builder.parse(IOUtils.toInputStream(html));
-        if (doc.getElementsByTagName(BODY_ELEMENT).getLength() == 0) {
-            throw new RuntimeException("Problem parsing document - invalid HTML, no body element found");
+    // Parses the web page in a single pass using the streaming SAX mode of Validator.nu parser. The returned extractor
+    // is reused, so its results are valid until the next page is parsed
+    private HtmlLinkExtractor parseHtmlStreaming(InputSource input) throws SAXException, IOException {
+        if (streamingParser == null) {
+            streamingParser = createStreamingParser(linkExtractor);
         }
 
-        return doc;
+        linkExtractor.reset();
+        linkExtractor.setCollectingText(config.getHtmlTextMode() == CrawlConfig.HtmlTextMode.EAGER);
+        try {
+            streamingParser.parse(input);
+        } catch (SAXException | IOException | RuntimeException e) {
+            streamingParser = null;
+            throw e;
+        }
+        return linkExtractor;
+    }
+
+    // Creates and configures the streaming parser
+    private static HtmlParser createStreamingParser(HtmlLinkExtractor extractor) {
+        HtmlParser parser = new HtmlParser(XmlViolationPolicy.ALTER_INFOSET);
+        parser.setCommentPolicy(XmlViolationPolicy.ALTER_INFOSET);
+        parser.setContentNonXmlCharPolicy(XmlViolationPolicy.ALTER_INFOSET);
+        parser.setContentSpacePolicy(XmlViolationPolicy.ALTER_INFOSET);
+        parser.setNamePolicy(XmlViolationPolicy.ALTER_INFOSET);
+        parser.setStreamabilityViolationPolicy(XmlViolationPolicy.ALTER_INFOSET);
+        parser.setXmlnsPolicy(XmlViolationPolicy.ALTER_INFOSET);
+        parser.setHeuristics(Heuristics.ALL);
+        parser.setCheckingNormalization(false);
+        parser.setDoctypeExpectation(DoctypeExpectation.NO_DOCTYPE_ERRORS);
+        parser.setScriptingEnabled(true);
+        parser.setContentHandler(extractor);
+        return parser;
     }
 
     // Returns <base> item if there is one
@@ -171,32 +262,7 @@ public class HtmlContentParser implements ContentParser {
                     String equiv = n.getAttributes().getNamedItem("http-equiv") != null ? n.getAttributes().getNamedItem("http-equiv").getNodeValue().trim() : null;
                     String content = n.getAttributes().getNamedItem("content") != null ? n.getAttributes().getNamedItem("content").getNodeValue().trim() : null;
                     if (equiv != null && content != null) {
-                        equiv = equiv.toLowerCase();
-
-                        // http-equiv="refresh" content="0;URL=http://foo.bar/..."
-                        if (equiv.equalsIgnoreCase("refresh")) {
-                            String metaRefresh = "";
-                            int pos = content.toLowerCase().indexOf("url=");
-                            if (pos != -1) {
-                                metaRefresh = content.substring(pos + 4);
-                            }
-
-                            if (metaRefresh.length() > 0) {
-                                ExtractedUrlAnchorPair newUrl = new ExtractedUrlAnchorPair();
-                                newUrl.setHref(metaRefresh);
-                                newUrl.setAnchor("");
-                                outgoingUrls.add(newUrl);
-                            }
-                        }
-
-                        // http-equiv="location" content="http://foo.bar/..."
-                        if (equiv.equalsIgnoreCase("location")) {
-                            if (content.length() > 0) {
-                                ExtractedUrlAnchorPair newUrl = new ExtractedUrlAnchorPair();
-                                newUrl.setHref(content);
-                                outgoingUrls.add(newUrl);
-                            }
-                        }
+                        addMetaUrl(outgoingUrls, equiv, content);
                     }
                 }
             }
@@ -205,24 +271,73 @@ public class HtmlContentParser implements ContentParser {
         return outgoingUrls;
     }
 
+    // Adds the URL of a refresh or location meta element
+    static void addMetaUrl(List<ExtractedUrlAnchorPair> outgoingUrls, String equiv, String content) {
+        equiv = equiv.toLowerCase();
+
+        // http-equiv="refresh" content="0;URL=http://foo.bar/..."
+        if (equiv.equalsIgnoreCase("refresh")) {
+            String metaRefresh = "";
+            int pos = content.toLowerCase().indexOf("url=");
+            if (pos != -1) {
+                metaRefresh = content.substring(pos + 4);
+            }
+
+            if (metaRefresh.length() > 0) {
+                ExtractedUrlAnchorPair newUrl = new ExtractedUrlAnchorPair();
+                newUrl.setHref(metaRefresh);
+                newUrl.setAnchor("");
+                outgoingUrls.add(newUrl);
+            }
+        }
+
+        // http-equiv="location" content="http://foo.bar/..."
+        if (equiv.equalsIgnoreCase("location")) {
+            if (content.length() > 0) {
+                ExtractedUrlAnchorPair newUrl = new ExtractedUrlAnchorPair();
+                newUrl.setHref(content);
+                outgoingUrls.add(newUrl);
+            }
+        }
+    }
+
     @Override
     // Runs the whole parsing, extracts links from the page 
     public Content parseContent(Page page, String contextUrl) {
         HtmlContent c = new HtmlContent();
         try {
-            Document doc = parseHtml(page, c);
+            InputSource input = decodeHtml(page, c);
 
-            c.setText(doc.getElementsByTagName(BODY_ELEMENT).item(0).getTextContent().trim());
-            if (doc.getElementsByTagName(TITLE_ELEMENT).getLength() > 0) {
-                c.setTitle(doc.getElementsByTagName(TITLE_ELEMENT).item(0).getTextContent().trim());
+            String baseUrl;
+            List<ExtractedUrlAnchorPair> extractedUrls;
+            if (config.isStreamingHtmlParsing()) {
+                HtmlLinkExtractor extractor = parseHtmlStreaming(input);
+
+                if (config.getHtmlTextMode() == CrawlConfig.HtmlTextMode.EAGER) {
+                    c.setText(extractor.getText());
+                }
+                if (extractor.getTitle() != null) {
+                    c.setTitle(extractor.getTitle());
+                }
+                baseUrl = extractor.getBaseUrl();
+                extractedUrls = extractor.getOutgoingUrls();
+            } else {
+                Document doc = parseHtml(input);
+
+                if (config.getHtmlTextMode() == CrawlConfig.HtmlTextMode.EAGER) {
+                    c.setText(doc.getElementsByTagName(BODY_ELEMENT).item(0).getTextContent().trim());
+                }
+                if (doc.getElementsByTagName(TITLE_ELEMENT).getLength() > 0) {
+                    c.setTitle(doc.getElementsByTagName(TITLE_ELEMENT).item(0).getTextContent().trim());
+                }
+                baseUrl = getBaseUrl(doc);
+                extractedUrls = getOutgoingUrls(doc);
             }
 
-            String baseUrl = getBaseUrl(doc);
             if (baseUrl != null) {
                 contextUrl = baseUrl;
             }
 
-            List<ExtractedUrlAnchorPair> extractedUrls = getOutgoingUrls(doc);
             List<WebURL> outgoingUrls = new ArrayList<>();
             int urlCount = 0;
             for (ExtractedUrlAnchorPair urlAnchorPair : extractedUrls) {
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.contentparser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+// Collects title, base URL, outgoing links with anchor texts and body text of a HTML page from the SAX events
+// of the parser in a single pass, without building a document tree. Can be reused for the next page after reset()
+public class HtmlLinkExtractor extends DefaultHandler {
+
+    private final StringBuilder text = new StringBuilder();
+    private StringBuilder title = null;
+    private String baseUrl = null;
+    private List<ExtractedUrlAnchorPair> outgoingUrls = new ArrayList<>();
+
+    // Nesting depth of the elements whose text is collected
+    private int bodyDepth = 0;
+    private int titleDepth = 0;
+
+    // Link and the text of the <a> element being parsed
+    private ExtractedUrlAnchorPair anchorUrl = null;
+    private StringBuilder anchorText = null;
+
+    private boolean titleDone = false;
+
+    // Body text is not collected if it is not needed
+    private boolean collectingText = true;
+
+    // Clears the results of the previous page, the returned link list is not touched
+    public void reset() {
+        text.setLength(0);
+        title = null;
+        baseUrl = null;
+        outgoingUrls = new ArrayList<>();
+        bodyDepth = 0;
+        titleDepth = 0;
+        anchorUrl = null;
+        anchorText = null;
+        titleDone = false;
+    }
+
+    // Sets whether the body text is collected
+    public void setCollectingText(boolean collectingText) {
+        this.collectingText = collectingText;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+        switch (localName) {
+            case "body":
+                bodyDepth++;
+                break;
+            case "title":
+                if (!titleDone) {
+                    titleDepth++;
+                    if (title == null) {
+                        title = new StringBuilder();
+                    }
+                }
+                break;
+            case "base":
+                if (baseUrl == null) {
+                    String href = attributes.getValue("href");
+                    if (href != null) {
+                        baseUrl = href.trim();
+                    }
+                }
+                break;
+            case "a":
+                // Anchors do not nest, an unclosed one ends where the next one starts
+                endAnchor();
+                String href = attributes.getValue("href");
+                if (href != null) {
+                    anchorUrl = addLink(href, "");
+                    anchorText = new StringBuilder();
+                }
+                break;
+            case "link":
+                addLink(attributes.getValue("href"), "");
+                break;
+            case "iframe":
+            case "frame":
+            case "embed":
+                addLink(attributes.getValue("src"), "");
+                break;
+            case "meta":
+                String equiv = attributes.getValue("http-equiv");
+                String content = attributes.getValue("content");
+                if (equiv != null && content != null) {
+                    HtmlContentParser.addMetaUrl(outgoingUrls, equiv.trim(), content.trim());
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+        switch (localName) {
+            case "body":
+                bodyDepth--;
+                break;
+            case "title":
+                if (titleDepth > 0 && --titleDepth == 0) {
+                    titleDone = true;
+                }
+                break;
+            case "a":
+                endAnchor();
+                break;
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (bodyDepth > 0 && collectingText) {
+            text.append(ch, start, length);
+        }
+        if (titleDepth > 0) {
+            title.append(ch, start, length);
+        }
+        if (anchorText != null) {
+            anchorText.append(ch, start, length);
+        }
+    }
+
+    @Override
+    public void endDocument() {
+        endAnchor();
+    }
+
+    // Adds a link with non-empty URL, returns the link or null
+    private ExtractedUrlAnchorPair addLink(String href, String anchor) {
+        if (href == null || href.trim().length() == 0) {
+            return null;
+        }
+        ExtractedUrlAnchorPair newUrl = new ExtractedUrlAnchorPair();
+        newUrl.setHref(href.trim());
+        newUrl.setAnchor(anchor);
+        outgoingUrls.add(newUrl);
+        return newUrl;
+    }
+
+    // Sets the anchor text of the open <a> element
+    private void endAnchor() {
+        if (anchorUrl != null) {
+            anchorUrl.setAnchor(anchorText.toString().trim());
+        }
+        anchorUrl = null;
+        anchorText = null;
+    }
+
+    // Returns text of the body element
+    public String getText() {
+        return text.toString().trim();
+    }
+
+    // Returns text of the first title element, null if there is none
+    public String getTitle() {
+        return title == null ? null : title.toString().trim();
+    }
+
+    // Returns href of the first base element, null if there is none
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    // Returns the links in document order
+    public List<ExtractedUrlAnchorPair> getOutgoingUrls() {
+        return outgoingUrls;
+    }
+}
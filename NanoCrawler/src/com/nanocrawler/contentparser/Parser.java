@@ -26,7 +26,8 @@ import java.util.List;
 
 import org.apache.log4j.Logger;
 
-// Parses content from the web page
+// Parses content from the web page. Content parsers keep reusable state between pages, so a parser must only be used
+// by one thread, i.e. each crawler has its own
 public class Parser {
     protected static final Logger logger = Logger.getLogger(Parser.class.getName());
 
@@ -21,7 +21,6 @@ package com.nanocrawler.contentparser;
 import com.nanocrawler.data.Content;
 import com.nanocrawler.data.Page;
 import com.nanocrawler.data.PlainTextContent;
-import org.mozilla.universalchardet.UniversalDetector;
 
 // PLain text parser
 public class PlainTextContentParser implements ContentParser {
@@ -42,20 +41,7 @@ public class PlainTextContentParser implements ContentParser {
     public Content parseContent(Page page, String contextURL) {
         PlainTextContent c = new PlainTextContent();
 
-        UniversalDetector detector = new UniversalDetector(null);
-        detector.handleData(page.getContentData(), 0, page.getContentData().length);
-        detector.dataEnd();
-        String encoding = detector.getDetectedCharset();
-
-        if (encoding != null) {
-            try {
-                c.setTextContent(new String(page.getContentData(), encoding));
-            } catch (Exception ex) {
-                c.setTextContent(new String(page.getContentData()));
-            }
-        } else {
-            c.setTextContent(new String(page.getContentData()));
-        }
+        c.setTextContent(new String(page.getContentData(), CharsetResolver.resolve(page, false)));
 
         return c;
     }
@@ -18,20 +18,22 @@
  */
 package com.nanocrawler.core;
 
+import com.nanocrawler.dbs.BerkeleyStorageFactory;
 import com.nanocrawler.dbs.DocIDServer;
 import com.nanocrawler.dbs.Frontier;
+import com.nanocrawler.dbs.InMemoryStorageFactory;
+import com.nanocrawler.dbs.StorageFactory;
 import com.nanocrawler.fetcher.PageFetcher;
 import com.nanocrawler.robotstxt.RobotstxtServer;
 import com.nanocrawler.urlmanipulation.URLCanonicalizer;
 import com.nanocrawler.urlmanipulation.WebURL;
 import com.nanocrawler.util.CrawlConfig;
 import com.nanocrawler.util.IO;
-import com.sleepycat.je.Environment;
-import com.sleepycat.je.EnvironmentConfig;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
@@ -41,22 +43,37 @@ public class CrawlController implements Runnable {
     static final Logger logger = Logger.getLogger(CrawlController.class.getName());
 
     // Status flag indicating if the crawling has completed
-    protected boolean finished;
+    protected volatile boolean finished;
 
     // Status flag indicating for an external shut down command
-    protected boolean shuttingDown;
+    protected volatile boolean shuttingDown;
 
     protected PageFetcher pageFetcher;
     protected RobotstxtServer robotstxtServer;
     protected Frontier frontier;
     protected DocIDServer docIdServer;
+    protected StorageFactory storage;
     protected CrawlConfig config;
 
     protected final Object waitingLock = new Object();
 
+    // How often the monitor wakes up while waiting for the crawl to finish
+    private static final long MONITOR_INTERVAL = 5000;
+    // How long crawler threads are waited for after the crawl has finished
+    private static final long THREAD_EXIT_TIMEOUT = 5000;
+
+    // Time of the last crawl state checkpoint for resumable crawls
+    protected long lastCheckpointTime = System.currentTimeMillis();
+
     protected List<Thread> threads = new ArrayList<>();
     protected List<WebCrawler> crawlers = new ArrayList<>();
 
+    // Stage queues and feeder of a pipelined crawl, null otherwise
+    protected CrawlPipeline pipeline = null;
+
+    // Consumer threads for visit() if the pages are dispatched asynchronously, null otherwise
+    protected VisitDispatcher visitDispatcher = null;
+
     // Constructor
     public CrawlController(CrawlConfig config, PageFetcher pageFetcher, RobotstxtServer robotstxtServer) throws Exception {
         this.config = config;
@@ -70,35 +87,44 @@ public class CrawlController implements Runnable {
             }
         }
 
-        logger.info("Setting envconfig");
-
-        // Configuration for Berkley DB instances
-        EnvironmentConfig envConfig = new EnvironmentConfig();
-        envConfig.setAllowCreate(true);
-        envConfig.setTransactional(false);
-        envConfig.setLocking(false);
         File envHome = new File(config.getCrawlStorageFolder() + "/frontier");
         if (!envHome.exists()) {
             if (!envHome.mkdir()) {
                 throw new Exception("Couldn't create this folder: " + envHome.getAbsolutePath());
             }
         }
-        IO.deleteFolderContents(envHome);
-        Environment env = new Environment(envHome, envConfig);
+        if (config.isResumableCrawling()) {
+            logger.info("Resumable crawling, keeping the existing crawl state in: " + envHome.getAbsolutePath());
+        } else {
+            IO.deleteFolderContents(envHome);
+        }
 
         logger.info("setting servers");
 
-        // Berkley DB servers for storing data
-        docIdServer = new DocIDServer(env, config);
-        frontier = new Frontier(env, docIdServer, config);
-
+        // Storage backend for the servers
         this.pageFetcher = pageFetcher;
         this.robotstxtServer = robotstxtServer;
 
+        storage = createStorageFactory(envHome);
+        docIdServer = new DocIDServer(storage, config);
+        frontier = new Frontier(storage, docIdServer, config, pageFetcher.getPolitenessScheduler());
+        if (config.isAsyncVisitDispatch()) {
+            visitDispatcher = new VisitDispatcher(config);
+        }
+
         finished = true;
         shuttingDown = false;
     }
 
+    // Creates the storage backend selected in the configuration
+    protected StorageFactory createStorageFactory(File envHome) {
+        if (config.getStorageBackend() == CrawlConfig.StorageBackend.IN_MEMORY) {
+            logger.info("Using in-memory storage");
+            return new InMemoryStorageFactory(config);
+        }
+        return new BerkeleyStorageFactory(envHome, config);
+    }
+
     // Adds a new seed URL. A seed URL is a URL that is fetched by the crawler
     // to extract new URLs in it and follow them for crawling. If specified docId is -1, 
     // then a new docId is assigned for the page URL 
@@ -158,6 +184,37 @@ public class CrawlController implements Runnable {
         this.start(c, isBlocking);
     }
 
+    // Start crawling with the configured number of crawlers created by the factory. Crawlers run in virtual threads
+    // if configured and available, so that thousands of them can block on slow hosts at the same time. With pipelined
+    // crawling the crawlers are created for the fetch, parse and link processing stages instead
+    public void startCrawling(WebCrawlerFactory factory, List<String> seedUrls, boolean isBlocking) {
+        if (config.isPipelinedCrawling()) {
+            try {
+                pipeline = new CrawlPipeline(this, config, factory);
+            } catch (Exception e) {
+                logger.error("Could not create crawl pipeline: " + e.getMessage());
+                return;
+            }
+            startCrawling(pipeline.getCrawlers(), seedUrls, isBlocking);
+            return;
+        }
+
+        CrawlerThreadFactory threadFactory = new CrawlerThreadFactory(config.isVirtualThreadCrawlers());
+        List<WebCrawler> c = new ArrayList<>();
+        try {
+            for (int i = 1; i <= config.getNumberOfCrawlers(); i++) {
+                WebCrawler crawler = factory.newInstance();
+                crawler.init(i, this, config, threadFactory);
+                c.add(crawler);
+            }
+        } catch (Exception e) {
+            logger.error("Could not create crawlers: " + e.getMessage());
+            return;
+        }
+        logger.info("Created " + c.size() + " crawlers in " + (threadFactory.isVirtual() ? "virtual" : "platform") + " threads");
+        startCrawling(c, seedUrls, isBlocking);
+    }
+
     // Starts the crawling
     private void start(List<WebCrawler> c, boolean isBlocking) {
         if (!finished) {
@@ -170,12 +227,19 @@ public class CrawlController implements Runnable {
             threads.clear();
             crawlers.clear();
 
+            if (visitDispatcher != null) {
+                visitDispatcher.start();
+            }
+
             for (WebCrawler crawler : c) {
                 crawler.getThread().start();
                 crawlers.add(crawler);
                 threads.add(crawler.getThread());
                 logger.info("Crawler " + crawler.getId() + " started.");
             }
+            if (pipeline != null) {
+                pipeline.start();
+            }
 
             Thread monitorThread = new Thread(this);
             monitorThread.start();
@@ -204,81 +268,90 @@ public class CrawlController implements Runnable {
         }
     }
 
-    // Crude way to implement polling on thread
-    private void sleep(int seconds) {
-        try {
-            Thread.sleep(seconds * 1000);
-        } catch (Exception ignored) {
+    // Writes the crawl state to disk if resumable crawling is on and checkpoint interval has passed
+    private void checkpointIfNeeded() {
+        if (!config.isResumableCrawling()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastCheckpointTime >= config.getResumeCheckpointInterval() * 1000L) {
+            frontier.sync();
+            lastCheckpointTime = now;
         }
     }
 
-    // Monitors crawler threads to check if they have stopped
+    // Monitors the crawl: waits until the frontier is quiescent (no URLs queued or being processed) and then finishes
+    // the crawl right away. Wakes up periodically for checkpoints and for noticing crawler threads that have died
     @Override
     public void run() {
         try {
-            synchronized (waitingLock) {
-                while (true) {
-                    sleep(5);
-                    boolean someoneIsWorking = false;
-                    for (int i = 0; i < threads.size(); i++) {
-                        Thread thread = threads.get(i);
-                        if (!thread.isAlive()) {
-                            if (!shuttingDown) {
-                                logger.info("Thread " + i + " is dead.");
-                            }
-                        } else if (crawlers.get(i).isNotWaitingForNewURLs()) {
-                            someoneIsWorking = true;
+            frontier.checkQuiescence();
+            boolean idleBefore = false;
+            while (!frontier.awaitQuiescence(MONITOR_INTERVAL, TimeUnit.MILLISECONDS)) {
+                checkpointIfNeeded();
+
+                boolean someoneIsWorking = false;
+                if (pipeline != null) {
+                    logger.info(pipeline.toString());
+                    someoneIsWorking = pipeline.getQueuedItems() > 0;
+                }
+                if (visitDispatcher != null) {
+                    logger.info(visitDispatcher.toString());
+                }
+                for (int i = 0; i < threads.size(); i++) {
+                    Thread thread = threads.get(i);
+                    if (!thread.isAlive()) {
+                        if (!shuttingDown) {
+                            logger.info("Thread " + i + " is dead.");
                         }
+                    } else if (crawlers.get(i).isNotWaitingForNewURLs()) {
+                        someoneIsWorking = true;
                     }
-                    if (!someoneIsWorking) {
-                        logger.info("It looks like no thread is working, waiting for 5 seconds to make sure...");
-                        sleep(5);
-
-                        someoneIsWorking = false;
-                        for (int i = 0; i < threads.size(); i++) {
-                            Thread thread = threads.get(i);
-                            if (thread.isAlive() && crawlers.get(i).isNotWaitingForNewURLs()) {
-                                someoneIsWorking = true;
-                            }
-                        }
+                }
 
-                        if (!someoneIsWorking) {
-                            if (!shuttingDown) {
-                                long queueLength = frontier.getCrawlQueueLength();
-                                if (queueLength > 0) {
-                                    continue;
-                                }
-                                logger.info("No thread is working and no more URLs are in queue waiting for another 5 seconds to make sure...");
-                                sleep(5);
-                                queueLength = frontier.getCrawlQueueLength();
-                                if (queueLength > 0) {
-                                    continue;
-                                }
-                            }
-
-                            logger.info("All of the crawlers are stopped. Finishing the process...");
-
-                            // Frontier informs web crawler threads to stop
-                            frontier.finish();
-                            for (WebCrawler crawler : crawlers) {
-                                crawler.onBeforeExit();
-                            }
-
-                            logger.info("Waiting for 5 seconds before final clean up...");
-                            sleep(5);
-
-                            frontier.close();
-                            docIdServer.close();
-                            pageFetcher.shutDown();
-
-                            finished = true;
-                            waitingLock.notifyAll();
-
-                            return;
-                        }
-                    }
+                // URLs of a crawler that died while processing them are never acknowledged, so the frontier does not
+                // become quiescent. Finish if no crawler has been working and nothing has been queued for two rounds
+                boolean idle = !someoneIsWorking && frontier.getCrawlQueueLength() == 0 && frontier.getNumberOfInProgressURLs() == 0;
+                if (idle && idleBefore) {
+                    logger.info("No thread is working and no more URLs are in queue");
+                    break;
+                }
+                idleBefore = idle;
+            }
+
+            logger.info("All of the crawlers are stopped. Finishing the process...");
+
+            // Frontier informs web crawler threads to stop
+            frontier.finish();
+            if (visitDispatcher != null) {
+                visitDispatcher.shutdown(THREAD_EXIT_TIMEOUT);
+                logger.info(visitDispatcher.toString());
+            }
+            for (WebCrawler crawler : crawlers) {
+                crawler.onBeforeExit();
+            }
+
+            // Crawlers waiting for URLs exit right away, the ones still fetching (when shutting down) get a moment to stop
+            long deadline = System.currentTimeMillis() + THREAD_EXIT_TIMEOUT;
+            for (Thread thread : threads) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining > 0) {
+                    thread.join(remaining);
                 }
             }
+            if (pipeline != null) {
+                pipeline.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+
+            frontier.close();
+            docIdServer.close();
+            storage.close();
+            pageFetcher.shutDown();
+
+            synchronized (waitingLock) {
+                finished = true;
+                waitingLock.notifyAll();
+            }
         } catch (Exception e) {
             e.printStackTrace();
             // Stop all operations
@@ -327,6 +400,14 @@ public class CrawlController implements Runnable {
         return docIdServer;
     }
 
+    public CrawlPipeline getPipeline() {
+        return pipeline;
+    }
+
+    public VisitDispatcher getVisitDispatcher() {
+        return visitDispatcher;
+    }
+
     public boolean isFinished() {
         return this.finished;
     }
@@ -0,0 +1,246 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.core;
+
+import com.nanocrawler.data.Page;
+import com.nanocrawler.dbs.Frontier;
+import com.nanocrawler.urlmanipulation.WebURL;
+import com.nanocrawler.util.CrawlConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+// Staged crawl pipeline: URLs taken from the frontier go through bounded queues to separate fetch, parse and link
+// processing thread pools, so CPU heavy parsing does not hold back fetching and slow fetches do not leave the parsers
+// idle. Every stage thread has its own crawler instance, so the crawler callbacks still run in one thread per instance
+public class CrawlPipeline {
+
+    static final Logger logger = Logger.getLogger(CrawlPipeline.class.getName());
+
+    // How long the stage threads wait for work before checking whether the crawl has finished
+    private static final long POLL_INTERVAL = 500;
+
+    // Work of a single stage for a URL taken from the frontier
+    private interface Stage {
+        public void process(WebCrawler crawler, PipelineItem item) throws InterruptedException;
+    }
+
+    // URL passing through the pipeline
+    private static class PipelineItem {
+        final WebURL url;
+        // Redirects change the URL's doc ID, so the leased one is kept for acknowledging
+        final int leasedDocid;
+        Page page;
+
+        PipelineItem(WebURL url) {
+            this.url = url;
+            this.leasedDocid = url.getDocid();
+        }
+    }
+
+    protected final Frontier frontier;
+    protected final CrawlConfig config;
+
+    protected final BlockingQueue<PipelineItem> fetchQueue;
+    protected final BlockingQueue<PipelineItem> parseQueue;
+    protected final BlockingQueue<PipelineItem> linkQueue;
+
+    protected final List<WebCrawler> crawlers = new ArrayList<>();
+    protected final Thread feederThread;
+
+    // Constructor, creates and initializes the crawlers of all the stages
+    public CrawlPipeline(CrawlController controller, CrawlConfig config, WebCrawlerFactory factory) throws Exception {
+        this.frontier = controller.getFrontier();
+        this.config = config;
+
+        int capacity = config.getPipelineQueueCapacity();
+        fetchQueue = new ArrayBlockingQueue<>(capacity);
+        parseQueue = new ArrayBlockingQueue<>(capacity);
+        linkQueue = new ArrayBlockingQueue<>(capacity);
+
+        // Fetching waits for the network and may run in virtual threads, parsing and link processing keep the CPUs busy
+        ThreadFactory ioThreads = new CrawlerThreadFactory(config.isVirtualThreadCrawlers());
+        ThreadFactory cpuThreads = new CrawlerThreadFactory(false);
+
+        int id = 1;
+        for (int i = 0; i < config.getPipelineFetchThreads(); i++) {
+            addWorker(controller, factory.newInstance(), id++, "Fetcher", fetchQueue, this::fetch, ioThreads);
+        }
+        for (int i = 0; i < config.getPipelineParseThreads(); i++) {
+            addWorker(controller, factory.newInstance(), id++, "Parser", parseQueue, this::parse, cpuThreads);
+        }
+        for (int i = 0; i < config.getPipelineLinkThreads(); i++) {
+            addWorker(controller, factory.newInstance(), id++, "LinkProcessor", linkQueue, this::processLinks, cpuThreads);
+        }
+
+        feederThread = new Thread(this::feed, "PipelineFeeder");
+    }
+
+    // Initializes a crawler to run the work loop of a stage in its thread
+    private void addWorker(CrawlController controller, WebCrawler crawler, int id, String stageName,
+                           BlockingQueue<PipelineItem> queue, Stage stage, ThreadFactory threadFactory) {
+        crawler.init(id, controller, config, r -> threadFactory.newThread(() -> work(crawler, queue, stage)));
+        crawler.getThread().setName(stageName + id);
+        crawlers.add(crawler);
+    }
+
+    // Starts feeding the pipeline from the frontier, the stage threads are started with their crawlers
+    public void start() {
+        feederThread.start();
+    }
+
+    // Returns the crawlers of all the stages
+    public List<WebCrawler> getCrawlers() {
+        return crawlers;
+    }
+
+    // Waits for the feeder thread to exit
+    public void join(long millis) throws InterruptedException {
+        feederThread.join(millis);
+    }
+
+    // Takes URLs from the frontier to the fetch queue, blocks while the queue is full
+    private void feed() {
+        int batchSize = config.getFetchBatchSize();
+        while (true) {
+            List<WebURL> assignedURLs = new ArrayList<>(batchSize);
+            frontier.getNextURLsForCrawling(batchSize, assignedURLs);
+            if (assignedURLs.isEmpty()) {
+                if (frontier.isFinished()) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                for (WebURL url : assignedURLs) {
+                    if (!forward(fetchQueue, new PipelineItem(url))) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Work loop of a stage thread
+    private void work(WebCrawler crawler, BlockingQueue<PipelineItem> queue, Stage stage) {
+        crawler.onStart();
+        while (!frontier.isFinished()) {
+            PipelineItem item;
+            try {
+                crawler.setWaitingForNewURLs(true);
+                item = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                crawler.setWaitingForNewURLs(false);
+            }
+            if (item == null) {
+                continue;
+            }
+
+            try {
+                stage.process(crawler, item);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                logger.error("Error while processing " + item.url.getURL() + ": " + e.getMessage(), e);
+                acknowledge(item);
+            }
+        }
+    }
+
+    // Fetch stage
+    private void fetch(WebCrawler crawler, PipelineItem item) throws InterruptedException {
+        item.page = crawler.fetchPage(item.url);
+        if (item.page == null) {
+            acknowledge(item);
+        } else {
+            forward(parseQueue, item);
+        }
+    }
+
+    // Parse stage
+    private void parse(WebCrawler crawler, PipelineItem item) throws InterruptedException {
+        if (crawler.parsePage(item.page)) {
+            forward(linkQueue, item);
+        } else {
+            acknowledge(item);
+        }
+    }
+
+    // Link processing stage, also hands the page to visit(). Failures are logged here so the URL is acknowledged
+    // exactly once
+    private void processLinks(WebCrawler crawler, PipelineItem item) {
+        try {
+            crawler.handleParsedPage(item.page);
+        } catch (Exception e) {
+            logger.error("Error while processing " + item.url.getURL() + ": " + e.getMessage(), e);
+        }
+        acknowledge(item);
+    }
+
+    // Puts the item to the queue of the next stage, waits while the queue is full. Returns false if the crawl finished
+    // in the meantime, the URL is then left unacknowledged so resumable crawls pick it up again
+    private boolean forward(BlockingQueue<PipelineItem> queue, PipelineItem item) throws InterruptedException {
+        while (!queue.offer(item, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            if (frontier.isFinished()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Tells the frontier the URL has been processed
+    private void acknowledge(PipelineItem item) {
+        frontier.setNewProcessedPage(item.url, item.leasedDocid);
+    }
+
+    // Returns number of URLs waiting for fetching
+    public int getFetchQueueDepth() {
+        return fetchQueue.size();
+    }
+
+    // Returns number of fetched pages waiting for parsing
+    public int getParseQueueDepth() {
+        return parseQueue.size();
+    }
+
+    // Returns number of parsed pages waiting for link processing
+    public int getLinkQueueDepth() {
+        return linkQueue.size();
+    }
+
+    // Returns number of URLs waiting in the queues of all the stages
+    public int getQueuedItems() {
+        return fetchQueue.size() + parseQueue.size() + linkQueue.size();
+    }
+
+    @Override
+    public String toString() {
+        return "Pipeline queue depths, fetch: " + getFetchQueueDepth() + ", parse: " + getParseQueueDepth() + ", link: " + getLinkQueueDepth();
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.core;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+// Creates the threads the crawlers run in. Virtual threads are used when asked for and the runtime has them
+// (Java 21 or later), otherwise platform threads. Virtual threads are looked up reflectively so that the crawler
+// still builds and runs on older runtimes
+public class CrawlerThreadFactory implements ThreadFactory {
+
+    static final Logger logger = Logger.getLogger(CrawlerThreadFactory.class.getName());
+
+    private final ThreadFactory virtualThreadFactory;
+
+    // Constructor
+    public CrawlerThreadFactory(boolean useVirtualThreads) {
+        ThreadFactory factory = null;
+        if (useVirtualThreads) {
+            factory = createVirtualThreadFactory();
+            if (factory == null) {
+                logger.warn("Virtual threads were requested but are not available in this runtime, fell back to platform threads for the crawlers");
+            }
+        }
+        this.virtualThreadFactory = factory;
+    }
+
+    // Returns true if the created threads are virtual threads
+    public boolean isVirtual() {
+        return virtualThreadFactory != null;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        if (virtualThreadFactory != null) {
+            return virtualThreadFactory.newThread(r);
+        }
+        return new Thread(r);
+    }
+
+    // Returns Thread.ofVirtual().factory() or null if the runtime has no virtual threads
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Object builder = ofVirtual.invoke(null);
+            // Look the method up on the public interface, the builder class itself is not accessible
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            logger.warn("Could not create virtual thread factory: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.core;
+
+import com.nanocrawler.data.Page;
+import com.nanocrawler.util.CrawlConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+// Hands the crawled pages to visit() in separate consumer threads through a bounded queue, so slow page processing
+// does not hold back the crawling. When the queue is full, the crawler blocks, drops the page or calls visit() itself
+// depending on the configured policy. Lag of the consumers is measured as the time a page waits in the queue, pages
+// visited in the crawler thread never waited in it and are left out of the lag
+public class VisitDispatcher {
+
+    static final Logger logger = Logger.getLogger(VisitDispatcher.class.getName());
+
+    // How long the consumer threads and blocked crawlers wait before checking whether the dispatcher has been stopped
+    private static final long POLL_INTERVAL = 500;
+
+    // Page waiting for visit(). The enqueue time is stamped once the task is in the queue, a consumer that takes the
+    // task before the stamp sees zero, which is also its lag
+    private static class VisitTask {
+        final WebCrawler crawler;
+        final Page page;
+        volatile long enqueueTime = 0;
+
+        VisitTask(WebCrawler crawler, Page page) {
+            this.crawler = crawler;
+            this.page = page;
+        }
+    }
+
+    protected final BlockingQueue<VisitTask> queue;
+    protected final CrawlConfig.VisitQueueFullPolicy policy;
+    protected final List<Thread> threads = new ArrayList<>();
+    protected volatile boolean stopped = false;
+
+    protected final AtomicLong completedVisits = new AtomicLong();
+    protected final AtomicLong queuedVisits = new AtomicLong();
+    protected final AtomicLong droppedVisits = new AtomicLong();
+    protected final AtomicLong callerRunsVisits = new AtomicLong();
+    protected final AtomicLong totalLag = new AtomicLong();
+    protected final AtomicLong maxLag = new AtomicLong();
+
+    // Constructor
+    public VisitDispatcher(CrawlConfig config) {
+        this.queue = new ArrayBlockingQueue<>(config.getVisitQueueCapacity());
+        this.policy = config.getVisitQueueFullPolicy();
+        for (int i = 1; i <= config.getVisitDispatchThreads(); i++) {
+            threads.add(new Thread(this::consume, "VisitConsumer" + i));
+        }
+    }
+
+    // Starts the consumer threads
+    public void start() {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    // Queues the page for visit() of the crawler, or handles it according to the policy when the queue is full.
+    // Pages are visited in the caller's thread once the dispatcher has been stopped
+    public void dispatch(WebCrawler crawler, Page page) {
+        VisitTask task = new VisitTask(crawler, page);
+        if (!stopped && queue.offer(task)) {
+            task.enqueueTime = System.currentTimeMillis();
+            return;
+        }
+
+        switch (policy) {
+            case BLOCK:
+                try {
+                    while (!stopped) {
+                        if (queue.offer(task, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                            task.enqueueTime = System.currentTimeMillis();
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                break;
+            case DROP:
+                if (!stopped) {
+                    droppedVisits.incrementAndGet();
+                    logger.debug("Visit queue full, dropping page: " + page.getWebURL().getURL());
+                    return;
+                }
+                break;
+            case CALLER_RUNS:
+                if (!stopped) {
+                    callerRunsVisits.incrementAndGet();
+                }
+                break;
+        }
+        visit(task, false);
+    }
+
+    // Work loop of a consumer thread, keeps going after stopping until the queue is empty
+    private void consume() {
+        while (!stopped || !queue.isEmpty()) {
+            try {
+                VisitTask task = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (task != null) {
+                    visit(task, true);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Calls visit(), the lag is recorded only for tasks taken from the queue
+    private void visit(VisitTask task, boolean queued) {
+        if (queued) {
+            long enqueueTime = task.enqueueTime;
+            long lag = enqueueTime == 0 ? 0 : Math.max(0, System.currentTimeMillis() - enqueueTime);
+            totalLag.addAndGet(lag);
+            maxLag.accumulateAndGet(lag, Math::max);
+            queuedVisits.incrementAndGet();
+        }
+        try {
+            task.crawler.visit(task.page);
+        } catch (Exception e) {
+            logger.error("Error while visiting " + task.page.getWebURL().getURL() + ": " + e.getMessage(), e);
+        }
+        completedVisits.incrementAndGet();
+    }
+
+    // Stops taking new pages and waits for the queued ones to be visited, the ones still queued after the timeout are
+    // visited in the calling thread
+    public void shutdown(long timeout) throws InterruptedException {
+        stopped = true;
+        long deadline = System.currentTimeMillis() + timeout;
+        for (Thread thread : threads) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                thread.join(remaining);
+            }
+        }
+        VisitTask task;
+        while ((task = queue.poll()) != null) {
+            visit(task, true);
+        }
+    }
+
+    // Returns number of pages waiting for visit()
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    // Returns how long (in milliseconds) the oldest queued page has been waiting, i.e. the current consumer lag
+    public long getCurrentLag() {
+        VisitTask head = queue.peek();
+        long enqueueTime = head == null ? 0 : head.enqueueTime;
+        return enqueueTime == 0 ? 0 : Math.max(0, System.currentTimeMillis() - enqueueTime);
+    }
+
+    // Returns average time (in milliseconds) the pages visited through the queue waited in it
+    public long getAverageLag() {
+        long queued = queuedVisits.get();
+        return queued == 0 ? 0 : totalLag.get() / queued;
+    }
+
+    // Returns longest time (in milliseconds) a visited page waited in the queue
+    public long getMaxLag() {
+        return maxLag.get();
+    }
+
+    // Returns number of pages visit() has been called for
+    public long getCompletedVisits() {
+        return completedVisits.get();
+    }
+
+    // Returns number of pages visited by the consumer threads, i.e. the pages the lag is measured over
+    public long getQueuedVisits() {
+        return queuedVisits.get();
+    }
+
+    // Returns number of pages dropped because the queue was full
+    public long getDroppedVisits() {
+        return droppedVisits.get();
+    }
+
+    // Returns number of pages visited in the crawler thread because the queue was full
+    public long getCallerRunsVisits() {
+        return callerRunsVisits.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Visit queue depth: " + getQueueDepth() + ", current lag: " + getCurrentLag() + " ms, average lag: " + getAverageLag()
+                + " ms, max lag: " + getMaxLag() + " ms, visited: " + getCompletedVisits() + " (" + getQueuedVisits() + " through the queue), dropped: " + getDroppedVisits()
+                + ", caller runs: " + getCallerRunsVisits();
+    }
+}
@@ -32,7 +32,10 @@ import com.nanocrawler.urlmanipulation.WebURL;
 import com.nanocrawler.util.CrawlConfig;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.http.HttpStatus;
 import org.apache.log4j.Logger;
@@ -63,8 +66,11 @@ public class WebCrawler implements Runnable {
     // Crawl queue manager
     private Frontier frontier;
 
+    // Hands the pages to visit() in other threads, null if visit() is called in the crawler thread
+    private VisitDispatcher visitDispatcher;
+
     // Is crawler working or are all the crawl queue items managed
-    private boolean isWaitingForNewURLs;
+    private volatile boolean isWaitingForNewURLs;
 
     // Configuration for the crawling process
     private CrawlConfig config;
@@ -76,14 +82,21 @@ public class WebCrawler implements Runnable {
 
     // Initializes thread
     public void init(int id, CrawlController crawlController, CrawlConfig config) {
+        init(id, crawlController, config, null);
+    }
+
+    // Initializes the crawler to run in a thread created by the given factory, null factory creates a platform thread
+    public void init(int id, CrawlController crawlController, CrawlConfig config, ThreadFactory threadFactory) {
         this.id = id;
         this.pageFetcher = crawlController.getPageFetcher();
         this.robotstxtServer = crawlController.getRobotstxtServer();
         this.docIdServer = crawlController.getDocIdServer();
         this.frontier = crawlController.getFrontier();
+        this.visitDispatcher = crawlController.getVisitDispatcher();
         this.parser = new Parser(config);
         this.isWaitingForNewURLs = false;
-        this.myThread = new Thread(this, "Crawler" + this.id);
+        this.myThread = threadFactory == null ? new Thread(this) : threadFactory.newThread(this);
+        this.myThread.setName("Crawler" + this.id);
     }
 
     // Returns ID of the crawler
@@ -101,6 +114,11 @@ public class WebCrawler implements Runnable {
         return !isWaitingForNewURLs;
     }
 
+    // Sets status, for crawlers whose thread is driven by a crawl pipeline
+    void setWaitingForNewURLs(boolean isWaitingForNewURLs) {
+        this.isWaitingForNewURLs = isWaitingForNewURLs;
+    }
+
     // Called just before the crawling starts
     public void onStart() {
         // Do nothing by default
@@ -151,28 +169,26 @@ public class WebCrawler implements Runnable {
     @Override
     public void run() {
         onStart();
+        int batchSize = config.getFetchBatchSize();
         while (true) {
-            List<WebURL> assignedURLs = new ArrayList<>(50);
+            List<WebURL> assignedURLs = new ArrayList<>(batchSize);
 
             // Should this change to LinkedBlockingQueue instead??
             isWaitingForNewURLs = true;
-            frontier.getNextURLsForCrawling(1, assignedURLs);
+            frontier.getNextURLsForCrawling(batchSize, assignedURLs);
             isWaitingForNewURLs = false;
+            // Frontier blocks until there are URLs for this crawler, so an empty result means the crawl has finished
             if (assignedURLs.isEmpty()) {
                 if (frontier.isFinished()) {
                     return;
                 }
-                try {
-                    Thread.sleep(3000);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                    return;
-                }
             } else {
                 for (WebURL curURL : assignedURLs) {
                     if (curURL != null) {
+                        // Redirects change the URL's doc ID, so the leased one is kept for acknowledging
+                        int leasedDocid = curURL.getDocid();
                         processPage(curURL);
-                        frontier.setNewProcessedPage(curURL);
+                        frontier.setNewProcessedPage(curURL, leasedDocid);
                     }
                 }
             }
@@ -181,32 +197,62 @@ public class WebCrawler implements Runnable {
 
     // Processes a single page given the URL
     private void processPage(WebURL curURL) {
-        PageFetchResult fetchResult;
-
         if (curURL == null) {
             return;
         }
 
+        // Fetch page, parse it, parse outgoing links and call visit() for custom handling of page
+        Page page = fetchPage(curURL);
+        if (page == null) {
+            return;
+        }
+        try {
+            if (parsePage(page)) {
+                handleParsedPage(page);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Fetches header and content of a page, returns null if the page is not to be processed further
+    protected Page fetchPage(WebURL curURL) {
+        PageFetchResult fetchResult;
+
         // First parse header and check everything is OK
         try {
             fetchResult = fetchHeaderAndCheck(curURL);
             if (fetchResult == null) {
-                return;
+                return null;
             }
         } catch (Exception ex) {
-            return;
+            return null;
         }
 
-        // Fetch page, parse it, parse outgoing links and call visit() for custom handling of page
         try {
-            fetchAndHandlePage(fetchResult, curURL);
+            Page page = new Page(curURL);
+            if (!fetchResult.fetchContent(page)) {
+                onContentFetchError(curURL);
+                return null;
+            }
+            return page;
         } catch (Exception e) {
             e.printStackTrace();
+            return null;
         } finally {
             fetchResult.discardContentIfNotConsumed();
         }
     }
 
+    // Parses a fetched page, returns false if the page could not be parsed
+    protected boolean parsePage(Page page) {
+        if (!parser.parse(page, page.getWebURL().getURL())) {
+            onParseError(page.getWebURL());
+            return false;
+        }
+        return true;
+    }
+
     // Fetches page header and checks for redirection, page length etc to determine whether the page should be processed
     private PageFetchResult fetchHeaderAndCheck(WebURL curURL) {
         PageFetchResult fetchResult = pageFetcher.fetchHeader(curURL);
@@ -258,51 +304,67 @@ public class WebCrawler implements Runnable {
         return fetchResult;
     }
 
-    // Fetches and handles page
-    private void fetchAndHandlePage(PageFetchResult fetchResult, WebURL curURL) {
-        Page page = new Page(curURL);
+    // Schedules the unseen outgoing links of a parsed page for crawling and hands the page to visit()
+    protected void handleParsedPage(Page page) {
+        WebURL curURL = page.getWebURL();
         int docid = curURL.getDocid();
 
-        if (!fetchResult.fetchContent(page)) {
-            onContentFetchError(curURL);
-            return;
-        }
-
-        if (!parser.parse(page, curURL.getURL())) {
-            onParseError(curURL);
-            return;
-        }
-
         Content parseData = page.getParseData();
         if (parseData instanceof HtmlContent) {
             HtmlContent htmlParseData = (HtmlContent) parseData;
-            List<WebURL> toSchedule = new ArrayList<>();
+            List<WebURL> outgoingUrls = htmlParseData.getOutgoingUrls();
             int maxCrawlDepth = config.getMaxDepthOfCrawling();
 
-            // Parse each outgoing link from the page and add relevant ones to crawl queue
-            for (WebURL webURL : htmlParseData.getOutgoingUrls()) {
+            // Resolve doc IDs of all outgoing links in one batch
+            List<String> urls = new ArrayList<>(outgoingUrls.size());
+            for (WebURL webURL : outgoingUrls) {
+                urls.add(webURL.getURL());
+            }
+            int[] docIds = docIdServer.getDocIds(urls);
+
+            // Parse each outgoing link from the page and collect the relevant unseen ones
+            List<WebURL> candidates = new ArrayList<>();
+            List<String> candidateUrls = new ArrayList<>();
+            Set<String> candidateSet = new HashSet<>();
+            for (int i = 0; i < outgoingUrls.size(); i++) {
+                WebURL webURL = outgoingUrls.get(i);
                 webURL.setParentDocid(docid);
                 webURL.setParentUrl(curURL.getURL());
-                int newdocid = docIdServer.getDocId(webURL.getURL());
-                if (newdocid > 0) {
+                if (docIds[i] > 0) {
                     webURL.setDepth((short) -1);
-                    webURL.setDocid(newdocid);
+                    webURL.setDocid(docIds[i]);
                 } else {
                     webURL.setDocid(-1);
                     webURL.setDepth((short) (curURL.getDepth() + 1));
                     if (maxCrawlDepth == -1 || curURL.getDepth() < maxCrawlDepth) {
-                        if (shouldVisit(webURL) && robotstxtServer.allows(webURL)) {
-                            webURL.setDocid(docIdServer.createOrGetNewDocID(webURL.getURL()));
-                            webURL.setPriority(URLPriority(webURL));
-                            toSchedule.add(webURL);
+                        if (candidateSet.add(webURL.getURL()) && shouldVisit(webURL) && robotstxtServer.allows(webURL)) {
+                            candidates.add(webURL);
+                            candidateUrls.add(webURL.getURL());
                         }
                     }
                 }
             }
+
+            // Assign doc IDs to the candidates in one batch and add the ones seen for the first time to crawl queue
+            boolean[] newlyCreated = new boolean[candidates.size()];
+            int[] newDocIds = docIdServer.createOrGetNewDocIDs(candidateUrls, newlyCreated);
+            List<WebURL> toSchedule = new ArrayList<>(candidates.size());
+            for (int i = 0; i < candidates.size(); i++) {
+                WebURL webURL = candidates.get(i);
+                webURL.setDocid(newDocIds[i]);
+                if (newlyCreated[i]) {
+                    webURL.setPriority(URLPriority(webURL));
+                    toSchedule.add(webURL);
+                }
+            }
             frontier.scheduleUrlsForCrawling(toSchedule);
         }
 
         // Send the end result to visit() method for use
-        visit(page);
+        if (visitDispatcher != null) {
+            visitDispatcher.dispatch(this, page);
+        } else {
+            visit(page);
+        }
     }
 }
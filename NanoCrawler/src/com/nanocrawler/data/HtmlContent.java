@@ -21,31 +21,63 @@ package com.nanocrawler.data;
 import com.nanocrawler.data.Content;
 import com.nanocrawler.urlmanipulation.WebURL;
 
+import java.nio.charset.Charset;
 import java.util.List;
+import java.util.function.Supplier;
 
 // Html content data structure
 public class HtmlContent implements Content {
 
     private String html;
+
+    // Page content and its charset the html string is decoded from when it is first asked for
+    private byte[] htmlData;
+    private Charset htmlCharset;
     private String text;
+
+    // Extracts the text when it is first asked for
+    private Supplier<String> textSupplier;
     private String title;
 
     private List<WebURL> outgoingUrls;
 
-    public String getHtml() {
+    public synchronized String getHtml() {
+        if (html == null && htmlData != null) {
+            html = new String(htmlData, htmlCharset).trim();
+            htmlData = null;
+        }
         return html;
     }
 
     public void setHtml(String html) {
         this.html = html;
+        this.htmlData = null;
+    }
+
+    // Sets the html to be decoded from the content lazily
+    public void setHtml(byte[] htmlData, Charset htmlCharset) {
+        this.html = null;
+        this.htmlData = htmlData;
+        this.htmlCharset = htmlCharset;
     }
 
-    public String getText() {
+    public synchronized String getText() {
+        if (text == null && textSupplier != null) {
+            text = textSupplier.get();
+            textSupplier = null;
+        }
         return text;
     }
 
     public void setText(String text) {
         this.text = text;
+        this.textSupplier = null;
+    }
+
+    // Sets the text to be extracted lazily
+    public void setText(Supplier<String> textSupplier) {
+        this.text = null;
+        this.textSupplier = textSupplier;
     }
 
     public String getTitle() {
@@ -66,6 +98,6 @@ public class HtmlContent implements Content {
 
     @Override
     public String toString() {
-        return text;
+        return getText();
     }
 }
@@ -57,9 +57,16 @@ public class Page {
             contentEncoding = encoding.getValue();
         }
 
-        Charset charset = ContentType.getOrDefault(entity).getCharset();
-        if (charset != null) {
-            contentCharset = charset.displayName();
+        // Only a charset the server declared, no default one. Unsupported charsets are left for the content parsers
+        contentCharset = null;
+        try {
+            ContentType declaredType = ContentType.get(entity);
+            Charset charset = declaredType == null ? null : declaredType.getCharset();
+            if (charset != null) {
+                contentCharset = charset.displayName();
+            }
+        } catch (Exception e) {
+            contentCharset = null;
         }
 
         contentData = EntityUtils.toByteArray(entity);
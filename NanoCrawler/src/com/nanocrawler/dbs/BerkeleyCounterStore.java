@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.util.ContentTypeUtil;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.OperationStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Counter store on a Berkeley DB database
+public class BerkeleyCounterStore implements CounterStore {
+
+    private Database countersDB = null;
+
+    // Constructor
+    public BerkeleyCounterStore(Environment env, String dbName) throws DatabaseException {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setAllowCreate(true);
+        dbConfig.setTransactional(false);
+        dbConfig.setDeferredWrite(true);
+        countersDB = env.openDatabase(null, dbName, dbConfig);
+    }
+
+    @Override
+    public Map<String, Long> getAll() {
+        Map<String, Long> counters = new HashMap<>();
+        Cursor cursor = null;
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        try {
+            cursor = countersDB.openCursor(null, null);
+            while (cursor.getNext(key, value, null) == OperationStatus.SUCCESS) {
+                String name = new String(key.getData(), key.getOffset(), key.getSize(), StandardCharsets.UTF_8);
+                counters.put(name, ContentTypeUtil.byteArray2Long(value.getData()));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return counters;
+    }
+
+    @Override
+    public void put(String name, long value) {
+        countersDB.put(null, new DatabaseEntry(name.getBytes(StandardCharsets.UTF_8)), new DatabaseEntry(ContentTypeUtil.long2ByteArray(value)));
+    }
+
+    @Override
+    public void sync() {
+        try {
+            countersDB.sync();
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            countersDB.close();
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.util.ContentTypeUtil;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.OperationStatus;
+
+import java.util.Arrays;
+
+// Doc ID store on a Berkeley DB database
+public class BerkeleyDocIDStore implements DocIDStore {
+
+    private Database docIDsDB = null;
+
+    // Constructor
+    public BerkeleyDocIDStore(Environment env, String dbName) throws DatabaseException {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setAllowCreate(true);
+        dbConfig.setTransactional(false);
+        dbConfig.setDeferredWrite(true);
+        docIDsDB = env.openDatabase(null, dbName, dbConfig);
+    }
+
+    @Override
+    public int get(byte[] key) {
+        DatabaseEntry value = new DatabaseEntry();
+        OperationStatus result = docIDsDB.get(null, new DatabaseEntry(key), value, null);
+        return toDocId(result, value);
+    }
+
+    @Override
+    public void put(byte[] key, int docId) {
+        docIDsDB.put(null, new DatabaseEntry(key), new DatabaseEntry(ContentTypeUtil.int2ByteArray(docId)));
+    }
+
+    @Override
+    // Batch shares one cursor for all the lookups, so sorted keys hit neighbouring B-tree nodes
+    public Batch openBatch() {
+        final Cursor cursor = docIDsDB.openCursor(null, null);
+        return new Batch() {
+            @Override
+            public int get(byte[] key) {
+                DatabaseEntry value = new DatabaseEntry();
+                OperationStatus result = cursor.getSearchKey(new DatabaseEntry(key), value, null);
+                return toDocId(result, value);
+            }
+
+            @Override
+            public void put(byte[] key, int docId) {
+                BerkeleyDocIDStore.this.put(key, docId);
+            }
+
+            @Override
+            public void close() {
+                cursor.close();
+            }
+        };
+    }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        Cursor cursor = null;
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        try {
+            cursor = docIDsDB.openCursor(null, null);
+            while (cursor.getNext(key, value, null) == OperationStatus.SUCCESS) {
+                byte[] keyData = Arrays.copyOfRange(key.getData(), key.getOffset(), key.getOffset() + key.getSize());
+                visitor.visit(keyData, toDocId(OperationStatus.SUCCESS, value));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    @Override
+    public long count() {
+        try {
+            return docIDsDB.count();
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    @Override
+    public void sync() {
+        try {
+            docIDsDB.sync();
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            docIDsDB.close();
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Converts DB entry to doc ID
+    private static int toDocId(OperationStatus result, DatabaseEntry value) {
+        if (result == OperationStatus.SUCCESS && value.getData().length > 0) {
+            return ContentTypeUtil.byteArray2Int(value.getData());
+        }
+        return -1;
+    }
+}
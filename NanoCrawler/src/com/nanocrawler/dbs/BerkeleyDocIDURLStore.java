@@ -0,0 +1,77 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.util.ContentTypeUtil;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.OperationStatus;
+
+import java.nio.charset.StandardCharsets;
+
+// Doc ID -> URL store on a Berkeley DB database
+public class BerkeleyDocIDURLStore implements DocIDURLStore {
+
+    private Database docIdURLsDB = null;
+
+    // Constructor
+    public BerkeleyDocIDURLStore(Environment env, String dbName) throws DatabaseException {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setAllowCreate(true);
+        dbConfig.setTransactional(false);
+        dbConfig.setDeferredWrite(true);
+        docIdURLsDB = env.openDatabase(null, dbName, dbConfig);
+    }
+
+    @Override
+    public String get(int docId) {
+        DatabaseEntry value = new DatabaseEntry();
+        OperationStatus result = docIdURLsDB.get(null, new DatabaseEntry(ContentTypeUtil.int2ByteArray(docId)), value, null);
+        if (result == OperationStatus.SUCCESS) {
+            return new String(value.getData(), value.getOffset(), value.getSize(), StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    @Override
+    public void put(int docId, String url) {
+        docIdURLsDB.put(null, new DatabaseEntry(ContentTypeUtil.int2ByteArray(docId)), new DatabaseEntry(url.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void sync() {
+        try {
+            docIdURLsDB.sync();
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            docIdURLsDB.close();
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.util.CrawlConfig;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.EnvironmentConfig;
+
+import java.io.File;
+
+import org.apache.log4j.Logger;
+
+// Storage on a Berkeley DB environment. Doc ID store and work queue can also be the file based off-heap and
+// mapped log engines, which are kept in the environment folder
+public class BerkeleyStorageFactory implements StorageFactory {
+    private static final Logger logger = Logger.getLogger(BerkeleyStorageFactory.class.getName());
+
+    private final Environment env;
+    private final CrawlConfig config;
+    private final boolean ownsEnvironment;
+    private URLPrefixDictionary urlPrefixDictionary = null;
+
+    // Constructor, opens an environment in the given folder
+    public BerkeleyStorageFactory(File envHome, CrawlConfig config) throws DatabaseException {
+        EnvironmentConfig envConfig = new EnvironmentConfig();
+        envConfig.setAllowCreate(true);
+        envConfig.setTransactional(false);
+        envConfig.setLocking(false);
+        this.env = new Environment(envHome, envConfig);
+        this.config = config;
+        this.ownsEnvironment = true;
+    }
+
+    // Constructor, uses an environment opened elsewhere and leaves closing it to the caller
+    public BerkeleyStorageFactory(Environment env, CrawlConfig config) {
+        this.env = env;
+        this.config = config;
+        this.ownsEnvironment = false;
+    }
+
+    // Returns the environment
+    public Environment getEnvironment() {
+        return env;
+    }
+
+    // Returns the binding for queued URLs, compact format uses a prefix dictionary shared by all the stores
+    protected synchronized WebURLTupleBinding createWebURLBinding() {
+        if (!config.isCompactURLEncoding()) {
+            return new WebURLTupleBinding();
+        }
+        if (urlPrefixDictionary == null) {
+            urlPrefixDictionary = new URLPrefixDictionary(new File(env.getHome(), "URLPrefixes.dict"));
+        }
+        return new WebURLTupleBinding(urlPrefixDictionary, DocIDServer.keepsUrls(config), config.getMaxQueuedAnchorLength());
+    }
+
+    @Override
+    public DocIDStore createDocIDStore(String name) {
+        if (config.getDocIdBackend() == CrawlConfig.DocIDBackend.OFF_HEAP) {
+            logger.info("Using off-heap doc ID store");
+            return new OffHeapDocIDStore(config.getOffHeapDocIdExpectedUrls(), new File(env.getHome(), name + ".idx"));
+        }
+        return new BerkeleyDocIDStore(env, name);
+    }
+
+    @Override
+    public DocIDURLStore createDocIDURLStore(String name) {
+        return new BerkeleyDocIDURLStore(env, name);
+    }
+
+    @Override
+    public URLQueue createURLQueue(String name) {
+        if (config.getFrontierQueueBackend() == CrawlConfig.FrontierQueueBackend.MAPPED_LOG) {
+            return new MappedLogURLQueue(new File(env.getHome(), name + ".log"), config.getLogQueueSegmentSize(), config.isResumableCrawling());
+        }
+        if (config.getFrontierBufferSize() > 0) {
+            return new BufferedURLQueueServer(env, name, config.getFrontierBufferSize(), createWebURLBinding());
+        }
+        return new CrawledURLQueueServer(env, name, createWebURLBinding());
+    }
+
+    @Override
+    public InProgressURLStore createInProgressURLStore(String name) {
+        return new InProgressURLServer(env, name, createWebURLBinding());
+    }
+
+    @Override
+    public CounterStore createCounterStore(String name) {
+        return new BerkeleyCounterStore(env, name);
+    }
+
+    @Override
+    public void close() {
+        if (urlPrefixDictionary != null) {
+            urlPrefixDictionary.close();
+        }
+        if (!ownsEnvironment) {
+            return;
+        }
+        try {
+            env.close();
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.urlmanipulation.WebURL;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.OperationStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Crawl queue that keeps the head of the queue in a bounded in-memory buffer and uses the DB only for the URLs
+// that do not fit in it. Every key in the buffer is smaller than the spill floor and every key in the DB is equal
+// or larger than it, so the buffer always holds the first URLs of the queue and the key order is kept across the tiers
+public class BufferedURLQueueServer extends CrawledURLQueueServer {
+
+    protected final TreeMap<byte[], WebURL> buffer = new TreeMap<>(CrawledURLQueueServer::compareKeys);
+    protected final int capacity;
+
+    // Lower bound of the keys in the DB, null when the DB is empty
+    protected byte[] spillFloor;
+
+    // Constructor, capacity is the max number of URLs kept in memory
+    public BufferedURLQueueServer(Environment env, String dbName, int capacity) throws DatabaseException {
+        this(env, dbName, capacity, new WebURLTupleBinding());
+    }
+
+    // Constructor, URLs spilled to the DB are stored with the given binding
+    public BufferedURLQueueServer(Environment env, String dbName, int capacity, WebURLTupleBinding webURLBinding) throws DatabaseException {
+        super(env, dbName, webURLBinding);
+        this.capacity = capacity;
+        this.spillFloor = super.getFirstKey("");
+    }
+
+    // Puts new URL to the queue of the given partition (host), to the buffer if it belongs in front of the DB
+    @Override
+    public void putURLToQueue(String partition, WebURL url) throws DatabaseException {
+        byte[] key = getDatabaseEntryKey(partition, url).getData();
+        synchronized (mutex) {
+            if (spillFloor == null || compareKeys(key, spillFloor) < 0) {
+                buffer.put(key, url);
+                if (buffer.size() > capacity) {
+                    spill(Math.max(1, capacity / 4));
+                }
+            } else {
+                writeToDB(key, url);
+            }
+        }
+    }
+
+    // Takes at most max URLs from the head of the partition, from the buffer first and then from the DB
+    @Override
+    public byte[] poll(String partition, int max, List<WebURL> results) throws DatabaseException {
+        synchronized (mutex) {
+            if (buffer.size() < capacity / 4 && spillFloor != null) {
+                refill(Math.max(1, capacity / 2));
+            }
+
+            byte[] prefix = getPartitionPrefix(partition);
+            SortedMap<byte[], WebURL> range = getBufferRange(prefix);
+            int matches = 0;
+            Iterator<WebURL> it = range.values().iterator();
+            while (matches < max && it.hasNext()) {
+                results.add(it.next());
+                it.remove();
+                matches++;
+            }
+
+            if (!range.isEmpty()) {
+                return stripPrefix(range.firstKey(), prefix);
+            }
+            if (spillFloor == null) {
+                return null;
+            }
+            if (matches < max) {
+                return super.poll(partition, max - matches, results);
+            }
+            return super.getFirstKey(partition);
+        }
+    }
+
+    // Returns URLs to be crawled from the given partition without removing them
+    @Override
+    public List<WebURL> getNewURLs(String partition, int max) throws DatabaseException {
+        synchronized (mutex) {
+            List<WebURL> results = new ArrayList<>(max);
+            for (WebURL url : getBufferRange(getPartitionPrefix(partition)).values()) {
+                if (results.size() >= max) {
+                    return results;
+                }
+                results.add(url);
+            }
+            if (spillFloor != null && results.size() < max) {
+                results.addAll(super.getNewURLs(partition, max - results.size()));
+            }
+            return results;
+        }
+    }
+
+    // Deletes number of URLs from the head of the given partition
+    @Override
+    public void delete(String partition, int count) throws DatabaseException {
+        synchronized (mutex) {
+            int matches = 0;
+            Iterator<WebURL> it = getBufferRange(getPartitionPrefix(partition)).values().iterator();
+            while (matches < count && it.hasNext()) {
+                it.next();
+                it.remove();
+                matches++;
+            }
+            if (spillFloor != null && matches < count) {
+                super.delete(partition, count - matches);
+            }
+        }
+    }
+
+    // Returns the key of the first URL in the given partition without the partition prefix
+    @Override
+    public byte[] getFirstKey(String partition) throws DatabaseException {
+        synchronized (mutex) {
+            byte[] prefix = getPartitionPrefix(partition);
+            SortedMap<byte[], WebURL> range = getBufferRange(prefix);
+            if (!range.isEmpty()) {
+                return stripPrefix(range.firstKey(), prefix);
+            }
+            return spillFloor == null ? null : super.getFirstKey(partition);
+        }
+    }
+
+    // Returns the first key of each partition, the buffer is written to the DB first
+    @Override
+    public Map<String, byte[]> getPartitionHeads(boolean partitioned) throws DatabaseException {
+        synchronized (mutex) {
+            spill(buffer.size());
+            return super.getPartitionHeads(partitioned);
+        }
+    }
+
+    // Returns amount of URLs on the crawl queue
+    @Override
+    public long getCrawlQueueLength() {
+        synchronized (mutex) {
+            if (spillFloor == null) {
+                return buffer.size();
+            }
+            return buffer.size() + super.getCrawlQueueLength();
+        }
+    }
+
+    // Returns number of URLs kept in memory
+    public int getBufferedCount() {
+        synchronized (mutex) {
+            return buffer.size();
+        }
+    }
+
+    // Writes the buffer to the DB so that the whole queue is on disk and synchronizes the DB. The buffer is
+    // refilled on the next poll
+    @Override
+    public void sync() {
+        synchronized (mutex) {
+            try {
+                spill(buffer.size());
+            } catch (DatabaseException e) {
+                e.printStackTrace();
+            }
+        }
+        super.sync();
+    }
+
+    // Moves count largest URLs of the buffer to the DB
+    protected void spill(int count) throws DatabaseException {
+        for (int i = 0; i < count && !buffer.isEmpty(); i++) {
+            Map.Entry<byte[], WebURL> entry = buffer.pollLastEntry();
+            writeToDB(entry.getKey(), entry.getValue());
+            if (spillFloor == null || compareKeys(entry.getKey(), spillFloor) < 0) {
+                spillFloor = entry.getKey();
+            }
+        }
+    }
+
+    // Moves at most count first URLs of the DB to the buffer and raises the spill floor to the next key in the DB
+    protected void refill(int count) throws DatabaseException {
+        Cursor cursor = null;
+        DatabaseEntry key = new DatabaseEntry();
+        DatabaseEntry value = new DatabaseEntry();
+        try {
+            cursor = urlsDB.openCursor(null, null);
+            OperationStatus result = cursor.getFirst(key, value, null);
+            int matches = 0;
+            while (matches < count && result == OperationStatus.SUCCESS) {
+                buffer.put(copyKey(key), webURLBinding.entryToObject(value));
+                cursor.delete();
+                matches++;
+                result = cursor.getNext(key, value, null);
+            }
+            spillFloor = (result == OperationStatus.SUCCESS) ? copyKey(key) : null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    protected void writeToDB(byte[] key, WebURL url) throws DatabaseException {
+        DatabaseEntry value = new DatabaseEntry();
+        webURLBinding.objectToEntry(url, value);
+        urlsDB.put(null, new DatabaseEntry(key), value);
+    }
+
+    // Returns the buffered URLs of the partition, all of the buffer for the empty partition
+    protected SortedMap<byte[], WebURL> getBufferRange(byte[] prefix) {
+        if (prefix.length == 0) {
+            return buffer;
+        }
+        // Prefix ends with a zero byte, so the partition ends before the same prefix ending with one
+        byte[] end = prefix.clone();
+        end[end.length - 1] = 1;
+        return buffer.subMap(prefix, end);
+    }
+
+    private static byte[] stripPrefix(byte[] key, byte[] prefix) {
+        return Arrays.copyOfRange(key, prefix.length, key.length);
+    }
+
+    private static byte[] copyKey(DatabaseEntry key) {
+        return Arrays.copyOfRange(key.getData(), key.getOffset(), key.getOffset() + key.getSize());
+    }
+}
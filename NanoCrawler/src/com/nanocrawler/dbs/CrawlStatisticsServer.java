@@ -18,49 +18,62 @@
  */
 package com.nanocrawler.dbs;
 
-import com.sleepycat.je.*;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.Environment;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-// Calculates total statistics of the crawl jobs
+// Calculates total statistics of the crawl jobs, the counters are kept in memory and written to the counter store
+// on sync and close, so that they survive restarts of resumable crawls
 public class CrawlStatisticsServer {
 
     public final static String SCHEDULED_PAGES = "Scheduled-Pages";
     public final static String PROCESSED_PAGES = "Processed-Pages";
+    public final static String SHED_PAGES = "Shed-Pages";
 
-    protected final Object mutex = new Object();
-    protected Map<String, Long> counterValues;
+    protected final Map<String, AtomicLong> counterValues = new ConcurrentHashMap<>();
+    protected CounterStore counterStore = null;
 
-    // Constructor
+    // Constructor, counters are loaded from the DB if the environment has one
     public CrawlStatisticsServer(Environment env) throws DatabaseException {
-        this.counterValues = new HashMap<>();
+        this(env == null ? null : new BerkeleyCounterStore(env, "Statistics"));
     }
 
-    // Returns value of e.g. scheduled (pages in queue) and processed pages
-    public long getValue(String name) {
-        synchronized (mutex) {
-            Long value = counterValues.get(name);
-            if (value == null) {
-                return 0;
+    // Constructor, counters are loaded from the store, null store keeps them only in this server
+    public CrawlStatisticsServer(CounterStore counterStore) {
+        this.counterStore = counterStore;
+        if (counterStore != null) {
+            for (Map.Entry<String, Long> entry : counterStore.getAll().entrySet()) {
+                counterValues.put(entry.getKey(), new AtomicLong(entry.getValue()));
             }
-            return value.longValue();
         }
     }
 
+    // Returns the counter, creating it if needed
+    protected AtomicLong getCounter(String name) {
+        AtomicLong counter = counterValues.get(name);
+        if (counter == null) {
+            counter = counterValues.computeIfAbsent(name, k -> new AtomicLong());
+        }
+        return counter;
+    }
+
+    // Returns value of e.g. scheduled (pages in queue) and processed pages
+    public long getValue(String name) {
+        AtomicLong counter = counterValues.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
     // Sets directly hash map value
     public void setValue(String name, long value) {
-        synchronized (mutex) {
-            counterValues.put(name, new Long(value));
-        }
+        getCounter(name).set(value);
     }
 
     // Increments value behind hash key name
     public void increment(String name, long addition) {
-        synchronized (mutex) {
-            long prevValue = getValue(name);
-            setValue(name, prevValue + addition);
-        }
+        getCounter(name).addAndGet(addition);
     }
 
     // Does increment of a value in a single step
@@ -68,11 +81,21 @@ public class CrawlStatisticsServer {
         increment(name, 1);
     }
 
-    // Always in sync, there is not DB behind this, only hash set
+    // Writes the counters to the counter store and the store to disk
     public void sync() {
+        if (counterStore != null) {
+            for (Map.Entry<String, AtomicLong> entry : counterValues.entrySet()) {
+                counterStore.put(entry.getKey(), entry.getValue().get());
+            }
+            counterStore.sync();
+        }
     }
 
-    // Does nothing as stats are not saved locally
+    // Writes the counters and closes the counter store
     public void close() {
+        if (counterStore != null) {
+            sync();
+            counterStore.close();
+        }
     }
 }
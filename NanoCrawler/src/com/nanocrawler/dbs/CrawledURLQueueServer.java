@@ -28,11 +28,15 @@ import com.sleepycat.je.Environment;
 import com.sleepycat.je.OperationStatus;
 import com.nanocrawler.urlmanipulation.WebURL;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 // DB server to handle crawled URLs
-public class CrawledURLQueueServer {
+public class CrawledURLQueueServer implements URLQueue {
 
     protected Database urlsDB = null;
     protected Environment env;
@@ -41,30 +45,41 @@ public class CrawledURLQueueServer {
 
     // Constructor
     public CrawledURLQueueServer(Environment env, String dbName) throws DatabaseException {
+        this(env, dbName, new WebURLTupleBinding());
+    }
+
+    // Constructor, URLs are stored with the given binding
+    public CrawledURLQueueServer(Environment env, String dbName, WebURLTupleBinding webURLBinding) throws DatabaseException {
         this.env = env;
         DatabaseConfig dbConfig = new DatabaseConfig();
         dbConfig.setAllowCreate(true);
         dbConfig.setTransactional(false);
         dbConfig.setDeferredWrite(true);
         urlsDB = env.openDatabase(null, dbName, dbConfig);
-        webURLBinding = new WebURLTupleBinding();
+        this.webURLBinding = webURLBinding;
     }
 
     // Returns URLs to be crawled
     public List<WebURL> getNewURLs(int max) throws DatabaseException {
+        return getNewURLs("", max);
+    }
+
+    // Returns URLs to be crawled from the given partition (host), empty partition covers the whole queue
+    public List<WebURL> getNewURLs(String partition, int max) throws DatabaseException {
         synchronized (mutex) {
             int matches = 0;
             List<WebURL> results = new ArrayList<>(max);
 
+            byte[] prefix = getPartitionPrefix(partition);
             Cursor cursor = null;
             OperationStatus result;
             DatabaseEntry key = new DatabaseEntry();
             DatabaseEntry value = new DatabaseEntry();
             try {
                 cursor = urlsDB.openCursor(null, null);
-                result = cursor.getFirst(key, value, null);
+                result = seekPartition(cursor, prefix, key, value);
 
-                while (matches < max && result == OperationStatus.SUCCESS) {
+                while (matches < max && result == OperationStatus.SUCCESS && hasPrefix(key, prefix)) {
                     if (value.getData().length > 0) {
                         results.add(webURLBinding.entryToObject(value));
                         matches++;
@@ -84,9 +99,15 @@ public class CrawledURLQueueServer {
 
     // Deletes number of URLs from the crawling queue
     public void delete(int count) throws DatabaseException {
+        delete("", count);
+    }
+
+    // Deletes number of URLs from the head of the given partition
+    public void delete(String partition, int count) throws DatabaseException {
         synchronized (mutex) {
             int matches = 0;
 
+            byte[] prefix = getPartitionPrefix(partition);
             Cursor cursor = null;
             OperationStatus result;
             DatabaseEntry key = new DatabaseEntry();
@@ -94,9 +115,9 @@ public class CrawledURLQueueServer {
 
             try {
                 cursor = urlsDB.openCursor(null, null);
-                result = cursor.getFirst(key, value, null);
+                result = seekPartition(cursor, prefix, key, value);
 
-                while (matches < count && result == OperationStatus.SUCCESS) {
+                while (matches < count && result == OperationStatus.SUCCESS && hasPrefix(key, prefix)) {
                     cursor.delete();
                     matches++;
                     result = cursor.getNext(key, value, null);
@@ -111,26 +132,209 @@ public class CrawledURLQueueServer {
         }
     }
 
-    // Important method, return URLs database entry key that determines when it is going to be crawled
+    // Takes at most max URLs from the head of the queue, reading and deleting them in a single cursor pass
+    public List<WebURL> poll(int max) throws DatabaseException {
+        return poll("", max);
+    }
+
+    // Takes at most max URLs from the head of the given partition (host)
+    public List<WebURL> poll(String partition, int max) throws DatabaseException {
+        List<WebURL> results = new ArrayList<>(max);
+        poll(partition, max, results);
+        return results;
+    }
+
+    // Takes at most max URLs from the head of the partition to results and returns the key of the URL that is next in line
+    // (without the partition prefix), or null if the partition was drained. The same cursor is used for reading, deleting
+    // and peeking the next entry, so the queue is walked only once per call
+    @Override
+    public byte[] poll(String partition, int max, List<WebURL> results) throws DatabaseException {
+        synchronized (mutex) {
+            int matches = 0;
+
+            byte[] prefix = getPartitionPrefix(partition);
+            Cursor cursor = null;
+            OperationStatus result;
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry value = new DatabaseEntry();
+            try {
+                cursor = urlsDB.openCursor(null, null);
+                result = seekPartition(cursor, prefix, key, value);
+
+                while (matches < max && result == OperationStatus.SUCCESS && hasPrefix(key, prefix)) {
+                    if (value.getData().length > 0) {
+                        results.add(webURLBinding.entryToObject(value));
+                    }
+                    cursor.delete();
+                    matches++;
+                    result = cursor.getNext(key, value, null);
+                }
+
+                if (result == OperationStatus.SUCCESS && hasPrefix(key, prefix)) {
+                    int offset = key.getOffset();
+                    return Arrays.copyOfRange(key.getData(), offset + prefix.length, offset + key.getSize());
+                }
+                return null;
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+    }
+
+    // Returns the key of the first URL in the given partition without the partition prefix, null if partition is empty
+    public byte[] getFirstKey(String partition) throws DatabaseException {
+        synchronized (mutex) {
+            byte[] prefix = getPartitionPrefix(partition);
+            Cursor cursor = null;
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry value = new DatabaseEntry();
+            value.setPartial(0, 0, true);
+            try {
+                cursor = urlsDB.openCursor(null, null);
+                OperationStatus result = seekPartition(cursor, prefix, key, value);
+                if (result == OperationStatus.SUCCESS && hasPrefix(key, prefix)) {
+                    int offset = key.getOffset();
+                    return Arrays.copyOfRange(key.getData(), offset + prefix.length, offset + key.getSize());
+                }
+                return null;
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+    }
+
+    // Returns the first key (without the partition prefix) of each partition in the queue. Jumps over the
+    // partitions with key range searches, so only one entry per partition is read
+    @Override
+    public Map<String, byte[]> getPartitionHeads(boolean partitioned) throws DatabaseException {
+        synchronized (mutex) {
+            Map<String, byte[]> heads = new LinkedHashMap<>();
+            Cursor cursor = null;
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry value = new DatabaseEntry();
+            value.setPartial(0, 0, true);
+            try {
+                cursor = urlsDB.openCursor(null, null);
+                OperationStatus result = cursor.getFirst(key, value, null);
+                while (result == OperationStatus.SUCCESS) {
+                    byte[] data = Arrays.copyOfRange(key.getData(), key.getOffset(), key.getOffset() + key.getSize());
+                    if (!partitioned) {
+                        heads.put("", data);
+                        break;
+                    }
+
+                    int end = 0;
+                    while (end < data.length && data[end] != 0) {
+                        end++;
+                    }
+                    heads.put(new String(data, 0, end, StandardCharsets.UTF_8), Arrays.copyOfRange(data, end + 1, data.length));
+
+                    // Next partition starts after the largest possible key of this one
+                    byte[] next = Arrays.copyOf(data, end + 1);
+                    next[end] = 1;
+                    key.setData(next);
+                    result = cursor.getSearchKeyRange(key, value, null);
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            return heads;
+        }
+    }
+
+    // Important method, return URLs priority key that determines when it is going to be crawled
     // URLs priority is on first byte, smaller URL priority number equals to "crawl-as-soon-as-possible"
     // Second determinant is the page's depth on the crawl process (lower equals sooner to be crawled)
     // Last bytes match to URLs Doc ID -- the smaller the doc ID (ie. earlier put to Doc ID DB), sooner the URL will be crawled
-    protected DatabaseEntry getDatabaseEntryKey(WebURL url) {
+    public static byte[] getPriorityKey(WebURL url) {
         byte[] keyData = new byte[6];
         keyData[0] = url.getPriority();
         keyData[1] = (url.getDepth() > Byte.MAX_VALUE ? Byte.MAX_VALUE : (byte) url.getDepth());
         ContentTypeUtil.putIntInByteArray(url.getDocid(), keyData, 2);
+        return keyData;
+    }
+
+    // Compares keys the same way as the database does, i.e. unsigned byte by byte
+    public static int compareKeys(byte[] a, byte[] b) {
+        int len = Math.min(a.length, b.length);
+        for (int i = 0; i < len; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    // Database entry key is the partition (host) prefix followed by the priority key, so URLs of a single
+    // host are stored next to each other. Empty partition has no prefix and keeps the global priority order
+    protected DatabaseEntry getDatabaseEntryKey(String partition, WebURL url) {
+        byte[] prefix = getPartitionPrefix(partition);
+        byte[] priorityKey = getPriorityKey(url);
+        byte[] keyData = new byte[prefix.length + priorityKey.length];
+        System.arraycopy(prefix, 0, keyData, 0, prefix.length);
+        System.arraycopy(priorityKey, 0, keyData, prefix.length, priorityKey.length);
         return new DatabaseEntry(keyData);
     }
 
+    protected DatabaseEntry getDatabaseEntryKey(WebURL url) {
+        return getDatabaseEntryKey("", url);
+    }
+
+    // Partition prefix is the UTF-8 host name terminated with a zero byte
+    protected byte[] getPartitionPrefix(String partition) {
+        if (partition == null || partition.isEmpty()) {
+            return new byte[0];
+        }
+        byte[] name = partition.getBytes(StandardCharsets.UTF_8);
+        return Arrays.copyOf(name, name.length + 1);
+    }
+
+    // Moves the cursor to the first entry of the partition
+    protected OperationStatus seekPartition(Cursor cursor, byte[] prefix, DatabaseEntry key, DatabaseEntry value) {
+        if (prefix.length == 0) {
+            return cursor.getFirst(key, value, null);
+        }
+        key.setData(prefix);
+        return cursor.getSearchKeyRange(key, value, null);
+    }
+
+    // Checks whether the key belongs to partition
+    protected boolean hasPrefix(DatabaseEntry key, byte[] prefix) {
+        if (key.getSize() < prefix.length) {
+            return false;
+        }
+        byte[] data = key.getData();
+        int offset = key.getOffset();
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // Puts new URL to queue
     public void putURLToQueue(WebURL url) throws DatabaseException {
+        putURLToQueue("", url);
+    }
+
+    // Puts new URL to the queue of the given partition (host)
+    @Override
+    public void putURLToQueue(String partition, WebURL url) throws DatabaseException {
         DatabaseEntry value = new DatabaseEntry();
         webURLBinding.objectToEntry(url, value);
-        urlsDB.put(null, getDatabaseEntryKey(url), value);
+        urlsDB.put(null, getDatabaseEntryKey(partition, url), value);
     }
 
     // Returns amount of URLs on the crawl queue
+    @Override
     public long getCrawlQueueLength() {
         try {
             return urlsDB.count();
@@ -142,6 +346,7 @@ public class CrawledURLQueueServer {
     }
 
     // Synchronizes DB
+    @Override
     public void sync() {
         if (urlsDB == null) {
             return;
@@ -155,6 +360,7 @@ public class CrawledURLQueueServer {
     }
 
     // Closes the DB
+    @Override
     public void close() {
         try {
             urlsDB.close();
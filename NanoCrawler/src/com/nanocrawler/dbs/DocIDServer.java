@@ -20,74 +20,274 @@ package com.nanocrawler.dbs;
 
 import com.nanocrawler.util.ContentTypeUtil;
 import com.nanocrawler.util.CrawlConfig;
-import com.sleepycat.je.Database;
-import com.sleepycat.je.DatabaseConfig;
-import com.sleepycat.je.DatabaseEntry;
+import com.nanocrawler.util.UrlFingerprint;
 import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.Environment;
-import com.sleepycat.je.OperationStatus;
 import org.apache.log4j.Logger;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 // Document ID server, keeps track of URLs that have been already crawled
 public class DocIDServer {
     private static final Logger logger = Logger.getLogger(DocIDServer.class.getName());
 
-    private Database docIDsDB = null;
-    private final Object mutex = new Object();
-    private int lastDocID;
+    // Number of lock stripes, has to be a power of two
+    private static final int LOCK_STRIPES = 256;
+
+    private final DocIDStore store;
+    private final AtomicInteger lastDocID = new AtomicInteger();
     private final CrawlConfig config;
 
-    // Constructor
+    // Locks are striped by URL fingerprint, so operations on the same URL are serialized but different URLs
+    // can be looked up and inserted concurrently
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    // Optional in-memory filter in front of the DB for answering "not seen" without a DB read
+    private UrlBloomFilter bloomFilter = null;
+    private final AtomicLong bloomFilterNegatives = new AtomicLong();
+    private final AtomicLong bloomFilterFalsePositives = new AtomicLong();
+
+    // Optional side store (doc ID -> URL) kept when the DB is keyed on URL fingerprints
+    private DocIDURLStore urlStore = null;
+    private final boolean fingerprintKeys;
+    private final AtomicLong fingerprintCollisions = new AtomicLong();
+
+    // Constructor, doc IDs are stored to Berkeley DB environment
     public DocIDServer(Environment env, CrawlConfig config) throws DatabaseException {
+        this(new BerkeleyStorageFactory(env, config), config);
+    }
+
+    // Constructor, stores are created with the storage factory
+    public DocIDServer(StorageFactory storage, CrawlConfig config) {
+        this(storage.createDocIDStore("DocIDs"), keepsUrls(config) ? storage.createDocIDURLStore("DocIDURLs") : null, config);
+    }
+
+    // Constructor with a specific doc ID store and an optional doc ID -> URL side store (used only with fingerprint keys)
+    public DocIDServer(DocIDStore store, DocIDURLStore urlStore, CrawlConfig config) {
         this.config = config;
-        DatabaseConfig dbConfig = new DatabaseConfig();
-        dbConfig.setAllowCreate(true);
-        dbConfig.setTransactional(false);
-        dbConfig.setDeferredWrite(true);
-        docIDsDB = env.openDatabase(null, "DocIDs", dbConfig);
-        lastDocID = 0;
+        this.store = store;
+        fingerprintKeys = usesFingerprintKeys(config);
+        if (fingerprintKeys) {
+            this.urlStore = urlStore;
+        }
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+
+        if (config.getDocIdBloomFilterExpectedUrls() > 0) {
+            bloomFilter = new UrlBloomFilter(config.getDocIdBloomFilterExpectedUrls(), config.getDocIdBloomFilterFalsePositiveRate());
+        }
+        if (store.count() > 0) {
+            restoreState();
+        }
+    }
+
+    // Off-heap store maps 64-bit fingerprints, so it always needs fingerprint keys
+    private static boolean usesFingerprintKeys(CrawlConfig config) {
+        return config.isDocIdFingerprintKeys() || config.getDocIdBackend() == CrawlConfig.DocIDBackend.OFF_HEAP;
+    }
+
+    // Returns true if the doc ID -> URL side store is kept, i.e. URLs can be looked up by doc ID
+    public static boolean keepsUrls(CrawlConfig config) {
+        return usesFingerprintKeys(config) && config.isDocIdFingerprintKeepUrls();
+    }
+
+    // Restores the last doc ID and fills the Bloom filter from the URLs already in the store (e.g. when resuming a crawl),
+    // the filter itself is not persisted
+    private void restoreState() {
+        store.forEachEntry((key, docId) -> {
+            if (docId > lastDocID.get()) {
+                lastDocID.set(docId);
+            }
+            if (bloomFilter != null) {
+                bloomFilter.put(getFingerprint(key));
+            }
+        });
+        logger.info("Restored " + store.count() + " doc IDs, last doc ID is " + lastDocID.get());
+        if (bloomFilter != null) {
+            logger.info("Doc ID Bloom filter rebuilt with " + bloomFilter.getInsertions() + " URLs (" + bloomFilter.getNumBits() + " bits, " + bloomFilter.getNumHashes() + " hashes)");
+        }
+    }
+
+    // Key bytes of the URL on the DB, either the full URL or its 64-bit fingerprint
+    private byte[] getKey(String url) {
+        if (fingerprintKeys) {
+            return ContentTypeUtil.long2ByteArray(UrlFingerprint.fingerprint(url));
+        }
+        return url.getBytes();
+    }
+
+    // Fingerprint for the Bloom filter, calculated from the DB key so that the filter can be rebuilt from the keys
+    private long getFingerprint(byte[] key) {
+        return UrlFingerprint.fingerprint(key);
+    }
+
+    // Returns the lock stripe of the URL
+    private Object getLock(long fingerprint) {
+        return locks[(int) (fingerprint >>> 32) & (LOCK_STRIPES - 1)];
+    }
+
+    // Returns true if the Bloom filter rules the URL out. The filter is lock free and only ever gains bits, so pure
+    // lookups can ask it before taking the lock stripe; inserts still check it under the stripe
+    private boolean isRuledOut(long fingerprint) {
+        if (bloomFilter != null && !bloomFilter.mightContain(fingerprint)) {
+            bloomFilterNegatives.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    // Looks up the doc ID, caller has to hold the URL's lock stripe
+    private int findDocId(String url, byte[] keyData, long fingerprint) {
+        return findDocId(null, url, keyData, fingerprint);
+    }
+
+    // Looks up the doc ID using the given batch (or the store directly if batch is null)
+    private int findDocId(DocIDStore.Batch batch, String url, byte[] keyData, long fingerprint) {
+        if (isRuledOut(fingerprint)) {
+            return -1;
+        }
+
+        int docid = (batch != null) ? batch.get(keyData) : store.get(keyData);
+        if (docid > 0) {
+            if (urlStore != null) {
+                verifyFingerprintMatch(url, docid);
+            }
+            return docid;
+        } else {
+            if (bloomFilter != null) {
+                bloomFilterFalsePositives.incrementAndGet();
+            }
+            return -1;
+        }
+    }
+
+    // Stores URL -> doc ID mapping to the DB (and to the Bloom filter), caller has to hold the URL's lock stripe
+    private void putDocId(DocIDStore.Batch batch, String url, byte[] keyData, long fingerprint, int docId) {
+        if (batch != null) {
+            batch.put(keyData, docId);
+        } else {
+            store.put(keyData, docId);
+        }
+        if (urlStore != null) {
+            urlStore.put(docId, url);
+        }
+        if (bloomFilter != null) {
+            bloomFilter.put(fingerprint);
+        }
+    }
+
+    // Checks from the side store that the fingerprint hit really belongs to the URL, a mismatch is a fingerprint collision
+    // and the URL is treated as seen
+    private void verifyFingerprintMatch(String url, int docid) {
+        String storedUrl = getUrl(docid);
+        if (storedUrl != null && !storedUrl.equals(url)) {
+            fingerprintCollisions.incrementAndGet();
+            logger.warn("URL fingerprint collision between " + url + " and " + storedUrl);
+        }
+    }
+
+    // Returns the URL of the doc ID from the side store, null if the side store is not kept or the doc ID is unknown
+    public String getUrl(int docid) {
+        if (urlStore == null) {
+            return null;
+        }
+        return urlStore.get(docid);
     }
 
     // Returns the docid of an already added url
     public int getDocId(String url) {
-        synchronized (mutex) {
-            OperationStatus result;
-            DatabaseEntry value = new DatabaseEntry();
-            DatabaseEntry key = new DatabaseEntry(url.getBytes());
-            result = docIDsDB.get(null, key, value, null);
-
-            if (result == OperationStatus.SUCCESS && value.getData().length > 0) {
-                return ContentTypeUtil.byteArray2Int(value.getData());
-            } else {
-                return -1;
-            }
+        byte[] keyData = getKey(url);
+        long fingerprint = getFingerprint(keyData);
+        if (isRuledOut(fingerprint)) {
+            return -1;
+        }
+        synchronized (getLock(fingerprint)) {
+            return findDocId(url, keyData, fingerprint);
         }
     }
 
     // Gets existing doc ID or creates new one if URL is not on the DocDB
     public int createOrGetNewDocID(String url) {
-        synchronized (mutex) {
+        byte[] keyData = getKey(url);
+        long fingerprint = getFingerprint(keyData);
+        synchronized (getLock(fingerprint)) {
             // Make sure that we have not already assigned a docid for this URL
-            int docid = getDocId(url);
+            int docid = findDocId(url, keyData, fingerprint);
             if (docid > 0) {
                 return docid;
             }
 
-            lastDocID++;
-            docIDsDB.put(null, new DatabaseEntry(url.getBytes()), new DatabaseEntry(ContentTypeUtil.int2ByteArray(lastDocID)));
-            return lastDocID;
+            docid = lastDocID.incrementAndGet();
+            putDocId(null, url, keyData, fingerprint, docid);
+            return docid;
         }
     }
 
+    // Returns doc IDs of the URLs, -1 for URLs that have not been seen. The URLs are looked up in key order
+    // with a single cursor to keep the DB reads local
+    public int[] getDocIds(List<String> urls) {
+        return resolveDocIds(urls, false, null);
+    }
+
+    // Gets existing doc IDs or creates new ones for the URLs that are not on the DocDB. If newlyCreated is given,
+    // it is filled with flags telling which of the URLs got their doc ID from this call
+    public int[] createOrGetNewDocIDs(List<String> urls, boolean[] newlyCreated) {
+        return resolveDocIds(urls, true, newlyCreated);
+    }
+
+    // Resolves (and optionally assigns) doc IDs for a batch of URLs in one sorted pass. Lock stripes are taken per
+    // URL, which is uncontended in practice, instead of holding every stripe for the whole batch
+    private int[] resolveDocIds(List<String> urls, boolean assignNew, boolean[] newlyCreated) {
+        int count = urls.size();
+        byte[][] keys = new byte[count][];
+        long[] fingerprints = new long[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = getKey(urls.get(i));
+            fingerprints[i] = getFingerprint(keys[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> CrawledURLQueueServer.compareKeys(keys[a], keys[b]));
+
+        int[] docIds = new int[count];
+        try (DocIDStore.Batch batch = store.openBatch()) {
+            for (int idx : order) {
+                if (!assignNew && isRuledOut(fingerprints[idx])) {
+                    docIds[idx] = -1;
+                    continue;
+                }
+                synchronized (getLock(fingerprints[idx])) {
+                    int docid = findDocId(batch, urls.get(idx), keys[idx], fingerprints[idx]);
+                    if (docid <= 0 && assignNew) {
+                        docid = lastDocID.incrementAndGet();
+                        putDocId(batch, urls.get(idx), keys[idx], fingerprints[idx], docid);
+                        if (newlyCreated != null) {
+                            newlyCreated[idx] = true;
+                        }
+                    }
+                    docIds[idx] = docid;
+                }
+            }
+        }
+        return docIds;
+    }
+
     // Adds URL with a specific doc ID -- the docId has to be bigger than current lastDocId
     public void addUrlAndDocId(String url, int docId) throws Exception {
-        synchronized (mutex) {
-            if (docId <= lastDocID) {
-                throw new Exception("Requested doc id: " + docId + " is not larger than: " + lastDocID);
+        byte[] keyData = getKey(url);
+        long fingerprint = getFingerprint(keyData);
+        synchronized (getLock(fingerprint)) {
+            int last = lastDocID.get();
+            if (docId <= last) {
+                throw new Exception("Requested doc id: " + docId + " is not larger than: " + last);
             }
 
             // Make sure that we have not already assigned a docid for this URL
-            int prevDocid = getDocId(url);
+            int prevDocid = findDocId(url, keyData, fingerprint);
             if (prevDocid > 0) {
                 if (prevDocid == docId) {
                     return;
@@ -95,11 +295,22 @@ public class DocIDServer {
                 throw new Exception("Doc id: " + prevDocid + " is already assigned to URL: " + url);
             }
 
-            docIDsDB.put(null, new DatabaseEntry(url.getBytes()), new DatabaseEntry(ContentTypeUtil.int2ByteArray(docId)));
-            lastDocID = docId;
+            // Reserve the doc ID so that no concurrent insert can hand it out
+            while (!lastDocID.compareAndSet(last, docId)) {
+                last = lastDocID.get();
+                if (docId <= last) {
+                    throw new Exception("Requested doc id: " + docId + " is not larger than: " + last);
+                }
+            }
+            putDocId(null, url, keyData, fingerprint, docId);
         }
     }
 
+    // Returns the last doc ID handed out
+    public int getLastDocId() {
+        return lastDocID.get();
+    }
+
     // Check if URL is already on DB
     public boolean isSeenBefore(String url) {
         return getDocId(url) != -1;
@@ -107,29 +318,57 @@ public class DocIDServer {
 
     // Returns of amount of URLs (DB entries) there are
     public int getDocCount() {
-        try {
-            return (int) docIDsDB.count();
-        } catch (DatabaseException e) {
-            e.printStackTrace();
+        return (int) store.count();
+    }
+
+    // Returns measured false positive rate of the Bloom filter, i.e. share of unseen URLs that the filter could not rule out
+    public double getBloomFilterFalsePositiveRate() {
+        long falsePositives = bloomFilterFalsePositives.get();
+        long total = falsePositives + bloomFilterNegatives.get();
+        return total == 0 ? 0 : (double) falsePositives / total;
+    }
+
+    // Returns number of lookups answered by the Bloom filter without reading the DB
+    public long getBloomFilterNegatives() {
+        return bloomFilterNegatives.get();
+    }
+
+    // Returns the Bloom filter in front of the DB, null if it is disabled
+    public UrlBloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    // Returns probability that at least two of the stored URLs share a fingerprint (birthday bound over 64 bits),
+    // 0 if the DB is keyed on full URLs
+    public double getFingerprintCollisionProbability() {
+        if (!fingerprintKeys) {
+            return 0;
         }
-        return -1;
+        double n = getDocCount();
+        return -Math.expm1(-n * (n - 1) / Math.pow(2, 65));
+    }
+
+    // Returns number of fingerprint collisions detected through the side store
+    public long getFingerprintCollisions() {
+        return fingerprintCollisions.get();
     }
 
     // Syncs the database, i.e. writes cached information to disk
     public void sync() {
-        try {
-            docIDsDB.sync();
-        } catch (DatabaseException e) {
-            e.printStackTrace();
+        store.sync();
+        if (urlStore != null) {
+            urlStore.sync();
         }
     }
 
     // Closes the database
     public void close() {
-        try {
-            docIDsDB.close();
-        } catch (DatabaseException e) {
-            e.printStackTrace();
+        if (fingerprintKeys) {
+            logger.info("URL fingerprint collision probability: " + getFingerprintCollisionProbability() + ", detected collisions: " + getFingerprintCollisions());
+        }
+        store.close();
+        if (urlStore != null) {
+            urlStore.close();
         }
     }
 }
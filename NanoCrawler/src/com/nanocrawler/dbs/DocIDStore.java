@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+// Storage behind DocIDServer mapping URL keys (full URL bytes or 64-bit fingerprints) to doc IDs.
+// Implementations do not have to be thread-safe for operations on the same key, DocIDServer serializes those
+public interface DocIDStore {
+
+    // Returns the doc ID stored for the key, -1 if there is none
+    public int get(byte[] key);
+
+    // Stores doc ID for the key
+    public void put(byte[] key, int docId);
+
+    // Opens a batch for looking up and storing many keys in key order
+    public Batch openBatch();
+
+    // Calls the visitor for each stored key - doc ID pair
+    public void forEachEntry(EntryVisitor visitor);
+
+    // Returns number of stored keys
+    public long count();
+
+    // Writes cached information to disk
+    public void sync();
+
+    // Closes the store
+    public void close();
+
+    // Lookup session for a sorted batch of keys, e.g. a single DB cursor
+    public interface Batch extends AutoCloseable {
+        public int get(byte[] key);
+
+        public void put(byte[] key, int docId);
+
+        @Override
+        public void close();
+    }
+
+    // Visitor for iterating over the stored entries
+    public interface EntryVisitor {
+        public void visit(byte[] key, int docId);
+    }
+}
@@ -18,12 +18,22 @@
  */
 package com.nanocrawler.dbs;
 
+import com.nanocrawler.fetcher.PolitenessScheduler;
 import com.nanocrawler.util.CrawlConfig;
 import com.sleepycat.je.DatabaseException;
 import com.sleepycat.je.Environment;
 import com.nanocrawler.urlmanipulation.WebURL;
 
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Logger;
 
@@ -32,37 +42,301 @@ public class Frontier {
     protected static final Logger logger = Logger.getLogger(Frontier.class.getName());
 
     protected final Object mutex = new Object();
-    protected final Object waitingList = new Object();
+    // Crawlers waiting for URLs block on a lock condition instead of a monitor, so that crawlers running on
+    // virtual threads do not pin their carrier threads while waiting
+    protected final ReentrantLock waitingLock = new ReentrantLock();
+    protected final Condition waitingList = waitingLock.newCondition();
 
-    protected boolean isFinished = false;
+    protected volatile boolean isFinished = false;
 
-    protected CrawledURLQueueServer workQueues;
+    protected URLQueue workQueues;
+    protected InProgressURLStore inProgressURLs;
     protected long scheduledPages;
+
+    // Number of queued URLs kept here for admission control, so the storage does not have to count them
+    protected long queuedURLs;
+    // True while the frontier is shedding new URLs, i.e. it has gone over the high watermark and not yet below the low one
+    protected boolean shedding = false;
+    protected AdmissionPolicy admissionPolicy;
+
+    // URLs handed out to crawlers that have not been acknowledged as processed yet. When there are none and the
+    // queue is empty, no new URLs can appear and the crawl is done: the quiescence latch is released
+    protected long inFlightURLs = 0;
+    protected final CountDownLatch quiescence = new CountDownLatch(1);
     protected DocIDServer docIdServer;
     protected CrawlStatisticsServer crawlStatisticsServer;
+    protected PolitenessScheduler politenessScheduler;
+
+    // Hosts with pending URLs. Hosts that can be fetched right away are kept in readyHosts ordered by the priority
+    // of their first URL, hosts that are still inside their politeness window are in waitingHosts ordered by ready time
+    protected final Map<String, HostQueue> hostQueues = new HashMap<>();
+    protected final PriorityQueue<HostQueue> readyHosts = new PriorityQueue<>((a, b) -> CrawledURLQueueServer.compareKeys(a.headKey, b.headKey));
+    protected final PriorityQueue<HostQueue> waitingHosts = new PriorityQueue<>((a, b) -> Long.compare(a.readyTime, b.readyTime));
+
+    // URLs handed out to crawlers and not yet acknowledged as processed, keyed by doc ID. All leases have the same
+    // timeout, so insertion order is also expiration order. The table is kept in memory only, leased URLs are written
+    // to the in-progress store only for resumable crawls
+    protected final LinkedHashMap<Integer, Lease> leases = new LinkedHashMap<>();
 
     private final CrawlConfig config;
 
+    // URL handed out to a crawler, it is put back to the queue if it is not processed before the lease expires. The
+    // URL instance identifies the lease: an acknowledgement for an expired lease carries the old instance and does
+    // not release the lease of the same URL handed out again
+    protected static class Lease {
+        protected final WebURL url;
+        protected final long expirationTime;
+
+        protected Lease(WebURL url, long expirationTime) {
+            this.url = url;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    // Pending URLs of a single host, the URLs themselves are stored in the work queue DB under the host's partition
+    protected static class HostQueue {
+        protected final String partition;
+        // Priority key of the first pending URL
+        protected byte[] headKey;
+        // Earliest time the next URL of the host can be fetched
+        protected long readyTime;
+        // True if the host is in ready heap, false if it is in waiting heap
+        protected boolean ready;
+
+        protected HostQueue(String partition) {
+            this.partition = partition;
+        }
+    }
+
     // Constructor
     public Frontier(Environment env, DocIDServer docIdServer, CrawlConfig config) {
+        this(env, docIdServer, config, new PolitenessScheduler(config));
+    }
+
+    // Constructor, uses the politeness scheduler of the page fetcher for determining when hosts are ready to be crawled
+    public Frontier(Environment env, DocIDServer docIdServer, CrawlConfig config, PolitenessScheduler politenessScheduler) {
+        this(new BerkeleyStorageFactory(env, config), docIdServer, config, politenessScheduler);
+    }
+
+    // Constructor, stores are created with the storage factory
+    public Frontier(StorageFactory storage, DocIDServer docIdServer, CrawlConfig config, PolitenessScheduler politenessScheduler) {
         this.config = config;
-        this.crawlStatisticsServer = new CrawlStatisticsServer(env);
+        // Statistics are persisted only for resumable crawls, otherwise they are kept in memory
+        this.crawlStatisticsServer = new CrawlStatisticsServer(config.isResumableCrawling() ? storage.createCounterStore("Statistics") : null);
         this.docIdServer = docIdServer;
-        workQueues = new CrawledURLQueueServer(env, "PendingURLsDB");
-        scheduledPages = 0;
+        this.politenessScheduler = politenessScheduler;
+        workQueues = storage.createURLQueue("PendingURLsDB");
+        inProgressURLs = storage.createInProgressURLStore("InProgressURLsDB");
+        scheduledPages = crawlStatisticsServer.getValue(CrawlStatisticsServer.SCHEDULED_PAGES);
+        if (workQueues.getCrawlQueueLength() > 0) {
+            restoreHostQueues();
+        }
+        if (inProgressURLs.getCount() > 0) {
+            requeueInProgressURLs();
+        }
+        queuedURLs = workQueues.getCrawlQueueLength();
+        admissionPolicy = new SamplingAdmissionPolicy(config);
+    }
+
+    // Sets the policy deciding which URLs are still queued while the frontier is over its high watermark
+    public void setAdmissionPolicy(AdmissionPolicy admissionPolicy) {
+        synchronized (mutex) {
+            this.admissionPolicy = admissionPolicy;
+        }
+    }
+
+    // Returns true if the URL can be queued. Shedding starts when the queue reaches the high watermark and lasts until
+    // it has been drained to the low watermark, in between the admission policy decides which URLs are kept. Called
+    // under the mutex, the callers count the shed URLs and add them to the statistics after releasing it
+    protected boolean isAdmitted(WebURL url) {
+        int highWatermark = config.getFrontierHighWatermark();
+        if (highWatermark <= 0) {
+            return true;
+        }
+        int lowWatermark = config.getFrontierLowWatermark() > 0 ? config.getFrontierLowWatermark() : highWatermark / 10 * 8;
+        if (shedding && queuedURLs <= lowWatermark) {
+            shedding = false;
+            logger.info("Frontier drained to " + queuedURLs + " URLs, admitting all new URLs again");
+        } else if (!shedding && queuedURLs >= highWatermark) {
+            shedding = true;
+            logger.info("Frontier reached " + queuedURLs + " URLs, shedding new URLs until it is down to " + lowWatermark);
+        }
+        return !shedding || admissionPolicy.admit(url);
+    }
+
+    // Puts URLs that were in progress when the previous run stopped back to the queue
+    protected void requeueInProgressURLs() {
+        synchronized (mutex) {
+            List<WebURL> urls = inProgressURLs.getAll();
+            for (WebURL url : urls) {
+                putURLToHostQueue(url);
+                inProgressURLs.remove(url.getDocid());
+            }
+            logger.info("Requeued " + urls.size() + " URLs that were in progress in the previous run");
+        }
+    }
+
+    // Records leases for the URLs handed out to a crawler
+    protected void leaseURLs(List<WebURL> urls, int from, long now) throws DatabaseException {
+        if (config.getUrlLeaseTimeout() <= 0) {
+            return;
+        }
+        long expirationTime = now + config.getUrlLeaseTimeout();
+        boolean resumable = config.isResumableCrawling();
+        for (int i = from; i < urls.size(); i++) {
+            WebURL url = urls.get(i);
+            if (resumable) {
+                inProgressURLs.put(url);
+            }
+            leases.remove(url.getDocid());
+            leases.put(url.getDocid(), new Lease(url, expirationTime));
+        }
+    }
+
+    // Puts URLs whose lease has expired back to the queue, e.g. when the crawler thread processing them has died or hung.
+    // The URL no longer counts as in flight, a late acknowledgement from the crawler is ignored
+    protected void requeueExpiredLeases(long now) throws DatabaseException {
+        Iterator<Map.Entry<Integer, Lease>> it = leases.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, Lease> entry = it.next();
+            Lease lease = entry.getValue();
+            if (lease.expirationTime > now) {
+                break;
+            }
+            it.remove();
+            if (inFlightURLs > 0) {
+                inFlightURLs--;
+            }
+            // The crawler may have changed the URL's doc ID (redirect), the record is stored under the leased one
+            if (config.isResumableCrawling()) {
+                inProgressURLs.remove(entry.getKey());
+            }
+            // A copy is queued, so the next lease of the URL is not the instance the old crawler still holds
+            putURLToHostQueue(new WebURL(lease.url));
+            logger.warn("Lease expired, requeuing: " + lease.url.getURL());
+        }
+    }
+
+    // Rebuilds the host queues from the URLs left in the work queue DB by a previous run
+    protected void restoreHostQueues() {
+        synchronized (mutex) {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, byte[]> head : workQueues.getPartitionHeads(config.isHostPartitionedFrontier()).entrySet()) {
+                HostQueue hostQueue = new HostQueue(head.getKey());
+                hostQueue.headKey = head.getValue();
+                hostQueues.put(hostQueue.partition, hostQueue);
+                enqueueHost(hostQueue, now);
+            }
+            logger.info("Resuming with " + workQueues.getCrawlQueueLength() + " queued URLs from " + hostQueues.size() + " hosts, "
+                    + scheduledPages + " pages scheduled and " + getNumberOfProcessedPages() + " processed earlier");
+        }
+    }
+
+    // Returns the partition (host) the URL is queued under, without host partitioning all URLs share one queue
+    protected String getPartition(WebURL url) {
+        if (config.isHostPartitionedFrontier()) {
+            return politenessScheduler.getPolitenessKey(url);
+        }
+        return "";
+    }
+
+    // Puts URL to its host's queue and updates the host's position in the ready / waiting heaps
+    protected void putURLToHostQueue(WebURL url) throws DatabaseException {
+        String partition = getPartition(url);
+        workQueues.putURLToQueue(partition, url);
+        queuedURLs++;
+
+        byte[] key = CrawledURLQueueServer.getPriorityKey(url);
+        HostQueue hostQueue = hostQueues.get(partition);
+        if (hostQueue == null) {
+            hostQueue = new HostQueue(partition);
+            hostQueue.headKey = key;
+            if (!partition.isEmpty()) {
+                hostQueue.readyTime = politenessScheduler.getNextFetchTime(partition);
+            }
+            hostQueues.put(partition, hostQueue);
+            enqueueHost(hostQueue, System.currentTimeMillis());
+        } else if (CrawledURLQueueServer.compareKeys(key, hostQueue.headKey) < 0) {
+            if (hostQueue.ready) {
+                readyHosts.remove(hostQueue);
+                hostQueue.headKey = key;
+                readyHosts.add(hostQueue);
+            } else {
+                hostQueue.headKey = key;
+            }
+        }
+    }
+
+    // Puts host to either ready or waiting heap depending on its ready time
+    protected void enqueueHost(HostQueue hostQueue, long now) {
+        hostQueue.ready = hostQueue.readyTime <= now;
+        if (hostQueue.ready) {
+            readyHosts.add(hostQueue);
+        } else {
+            waitingHosts.add(hostQueue);
+        }
+    }
+
+    // Moves hosts whose politeness window has passed to ready heap
+    protected void promoteReadyHosts(long now) {
+        while (!waitingHosts.isEmpty() && waitingHosts.peek().readyTime <= now) {
+            HostQueue hostQueue = waitingHosts.poll();
+            hostQueue.ready = true;
+            readyHosts.add(hostQueue);
+        }
+    }
+
+    // Takes URLs from the ready hosts, at most one URL per host when the frontier is host partitioned
+    protected void takeURLsFromReadyHosts(int max, List<WebURL> result) throws DatabaseException {
+        long now = System.currentTimeMillis();
+        int from = result.size();
+        requeueExpiredLeases(now);
+        promoteReadyHosts(now);
+
+        while (result.size() < max && !readyHosts.isEmpty()) {
+            HostQueue hostQueue = readyHosts.poll();
+            boolean partitioned = !hostQueue.partition.isEmpty();
+
+            hostQueue.headKey = workQueues.poll(hostQueue.partition, partitioned ? 1 : max - result.size(), result);
+            if (hostQueue.headKey == null) {
+                hostQueues.remove(hostQueue.partition);
+                continue;
+            }
+
+            // The URL just handed out will take the host's next fetch slot, so the host is ready again one delay after it
+            if (partitioned) {
+                long nextFetchTime = Math.max(now, politenessScheduler.getNextFetchTime(hostQueue.partition));
+                hostQueue.readyTime = nextFetchTime + config.getPolitenessDelay();
+            }
+            enqueueHost(hostQueue, now);
+        }
+        queuedURLs -= result.size() - from;
+        inFlightURLs += result.size() - from;
+        leaseURLs(result, from, now);
+
+        // Compact queue records leave out the parent URL, it is looked up from doc ID server if needed
+        for (int i = from; i < result.size(); i++) {
+            WebURL url = result.get(i);
+            url.setParentUrlResolver(docIdServer::getUrl);
+        }
     }
 
     // Adds to list of crawled pages new URLs from the argument urls
     public void scheduleUrlsForCrawling(List<WebURL> urls) {
         int maxPagesToFetch = config.getMaxPagesToFetch();
+        int shedPages = 0;
         synchronized (mutex) {
             int newScheduledPage = 0;
             for (WebURL url : urls) {
                 if (maxPagesToFetch > 0 && (scheduledPages + newScheduledPage) >= maxPagesToFetch) {
                     break;
                 }
+                if (!isAdmitted(url)) {
+                    shedPages++;
+                    continue;
+                }
                 try {
-                    workQueues.putURLToQueue(url);
+                    putURLToHostQueue(url);
                     newScheduledPage++;
                 } catch (DatabaseException e) {
                     logger.error("Error while puting the url in the work queue.");
@@ -74,39 +348,48 @@ public class Frontier {
                 crawlStatisticsServer.increment(CrawlStatisticsServer.SCHEDULED_PAGES, newScheduledPage);
             }
 
-            synchronized (waitingList) {
-                waitingList.notifyAll();
-            }
+            signalWaitingCrawlers();
+        }
+        if (shedPages > 0) {
+            crawlStatisticsServer.increment(CrawlStatisticsServer.SHED_PAGES, shedPages);
         }
     }
 
     // Adds a new url to crawled page URL list
     public void scheduleURLForCrawling(WebURL url) {
         int maxPagesToFetch = config.getMaxPagesToFetch();
+        boolean shed = false;
         synchronized (mutex) {
             try {
                 if (maxPagesToFetch < 0 || scheduledPages < maxPagesToFetch) {
-                    workQueues.putURLToQueue(url);
-                    scheduledPages++;
-                    crawlStatisticsServer.increment(CrawlStatisticsServer.SCHEDULED_PAGES);
+                    if (isAdmitted(url)) {
+                        putURLToHostQueue(url);
+                        scheduledPages++;
+                        crawlStatisticsServer.increment(CrawlStatisticsServer.SCHEDULED_PAGES);
+                        signalWaitingCrawlers();
+                    } else {
+                        shed = true;
+                    }
                 }
             } catch (DatabaseException e) {
                 logger.error("Error while puting the url in the work queue.");
             }
         }
+        if (shed) {
+            crawlStatisticsServer.increment(CrawlStatisticsServer.SHED_PAGES);
+        }
     }
 
-    // Returns new URLs for crawling
+    // Returns new URLs for crawling, only URLs whose host can be fetched right away are returned
     public void getNextURLsForCrawling(int max, List<WebURL> result) {
         while (true) {
+            long waitTime;
             synchronized (mutex) {
                 if (isFinished) {
                     return;
                 }
                 try {
-                    List<WebURL> curResults = workQueues.getNewURLs(max);
-                    workQueues.delete(curResults.size());
-                    result.addAll(curResults);
+                    takeURLsFromReadyHosts(max, result);
                 } catch (DatabaseException e) {
                     logger.error("Error while getting next urls: " + e.getMessage());
                     e.printStackTrace();
@@ -114,14 +397,30 @@ public class Frontier {
                 if (result.size() > 0) {
                     return;
                 }
+                if (inFlightURLs == 0) {
+                    checkQuiescence();
+                }
+
+                // Zero means waiting until new URLs are scheduled
+                waitTime = getWaitTime(System.currentTimeMillis());
+
+                // Waiting lock is taken before the mutex is released, so a signal sent after this point is not lost
+                waitingLock.lock();
             }
 
-            // If there are no new URLs to be crawled, put the crawl thread on halt until new URLs have emerged
+            // If there are no new URLs to be crawled, put the crawl thread on halt until new URLs have emerged,
+            // the first waiting host becomes ready or the first lease expires
             try {
-                synchronized (waitingList) {
-                    waitingList.wait();
+                if (!isFinished) {
+                    if (waitTime == 0) {
+                        waitingList.await();
+                    } else {
+                        waitingList.await(waitTime, TimeUnit.MILLISECONDS);
+                    }
                 }
             } catch (InterruptedException ex) {
+            } finally {
+                waitingLock.unlock();
             }
 
             if (isFinished) {
@@ -130,9 +429,96 @@ public class Frontier {
         }
     }
 
-    // Set statistics on processed pages
+    // Returns how long a crawler should wait for the next event in the frontier, zero means until new URLs are scheduled
+    protected long getWaitTime(long now) {
+        long next = Long.MAX_VALUE;
+        if (!waitingHosts.isEmpty()) {
+            next = waitingHosts.peek().readyTime;
+        }
+        if (!leases.isEmpty()) {
+            next = Math.min(next, leases.values().iterator().next().expirationTime);
+        }
+        return next == Long.MAX_VALUE ? 0 : Math.max(1, next - now);
+    }
+
+    // Set statistics on processed pages and releases the lease of the URL
     public void setNewProcessedPage(WebURL webURL) {
-        crawlStatisticsServer.increment(CrawlStatisticsServer.PROCESSED_PAGES);
+        setNewProcessedPage(webURL, webURL.getDocid());
+    }
+
+    // Set statistics on processed pages and releases the lease with given doc ID, used when the URL has changed
+    // during processing (e.g. redirects)
+    public void setNewProcessedPage(WebURL webURL, int leasedDocid) {
+        synchronized (mutex) {
+            if (config.getUrlLeaseTimeout() > 0) {
+                Lease lease = leases.get(leasedDocid);
+                if (lease == null || lease.url != webURL) {
+                    // The lease has expired and the URL was requeued, it was no longer counted as in flight and
+                    // the requeued copy is counted as processed when it is acknowledged
+                    return;
+                }
+                leases.remove(leasedDocid);
+                if (config.isResumableCrawling()) {
+                    inProgressURLs.remove(leasedDocid);
+                }
+            }
+            crawlStatisticsServer.increment(CrawlStatisticsServer.PROCESSED_PAGES);
+            if (inFlightURLs > 0) {
+                inFlightURLs--;
+            }
+            if (inFlightURLs == 0) {
+                checkQuiescence();
+            }
+        }
+    }
+
+    // Releases the quiescence latch if no URL is being processed and the queue is empty. The queued URL counter and
+    // the host heaps are checked first, the storage is asked for its exact length (which may have to count the records)
+    // only once they say the queue is empty. The counter used for admission control is corrected at the same time
+    public void checkQuiescence() {
+        synchronized (mutex) {
+            if (inFlightURLs > 0 || quiescence.getCount() == 0) {
+                return;
+            }
+            if (queuedURLs > 0 && !hostQueues.isEmpty()) {
+                return;
+            }
+            queuedURLs = workQueues.getCrawlQueueLength();
+            if (queuedURLs == 0) {
+                quiescence.countDown();
+            }
+        }
+    }
+
+    // Waits until the crawl is quiescent or finished, returns false if the timeout passed first
+    public boolean awaitQuiescence(long timeout, TimeUnit unit) throws InterruptedException {
+        return quiescence.await(timeout, unit);
+    }
+
+    // Returns number of URLs handed out to crawlers and not yet acknowledged
+    public long getNumberOfInFlightURLs() {
+        synchronized (mutex) {
+            return inFlightURLs;
+        }
+    }
+
+    // Returns number of URLs handed out to crawlers and not yet processed
+    public int getNumberOfInProgressURLs() {
+        synchronized (mutex) {
+            return leases.size();
+        }
+    }
+
+    // Returns number of URLs dropped by admission control
+    public long getNumberOfShedPages() {
+        return crawlStatisticsServer.getValue(CrawlStatisticsServer.SHED_PAGES);
+    }
+
+    // Returns true while new URLs are being shed
+    public boolean isShedding() {
+        synchronized (mutex) {
+            return shedding;
+        }
     }
 
     // Returns number of processed pages
@@ -145,9 +531,17 @@ public class Frontier {
         return workQueues.getCrawlQueueLength();
     }
 
+    // Returns number of hosts that have URLs waiting in the crawl queue
+    public int getNumberOfQueuedHosts() {
+        synchronized (mutex) {
+            return hostQueues.size();
+        }
+    }
+
     // Explicitly synchronize the servers
     public void sync() {
         workQueues.sync();
+        inProgressURLs.sync();
         docIdServer.sync();
         crawlStatisticsServer.sync();
     }
@@ -156,6 +550,7 @@ public class Frontier {
     public void close() {
         sync();
         workQueues.close();
+        inProgressURLs.close();
         crawlStatisticsServer.close();
     }
 
@@ -167,8 +562,17 @@ public class Frontier {
     // Stops the crawling process
     public void finish() {
         isFinished = true;
-        synchronized (waitingList) {
-            waitingList.notifyAll();
+        quiescence.countDown();
+        signalWaitingCrawlers();
+    }
+
+    // Wakes up the crawlers waiting for URLs
+    protected void signalWaitingCrawlers() {
+        waitingLock.lock();
+        try {
+            waitingList.signalAll();
+        } finally {
+            waitingLock.unlock();
         }
     }
 }
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Doc ID store that keeps the keys only in memory. Keys are wrapped in byte buffers, which compare by content
+public class InMemoryDocIDStore implements DocIDStore {
+
+    private final ConcurrentHashMap<ByteBuffer, Integer> docIds = new ConcurrentHashMap<>();
+
+    @Override
+    public int get(byte[] key) {
+        Integer docId = docIds.get(ByteBuffer.wrap(key));
+        return docId == null ? -1 : docId;
+    }
+
+    @Override
+    public void put(byte[] key, int docId) {
+        docIds.put(ByteBuffer.wrap(key.clone()), docId);
+    }
+
+    @Override
+    public Batch openBatch() {
+        return new Batch() {
+            @Override
+            public int get(byte[] key) {
+                return InMemoryDocIDStore.this.get(key);
+            }
+
+            @Override
+            public void put(byte[] key, int docId) {
+                InMemoryDocIDStore.this.put(key, docId);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        for (Map.Entry<ByteBuffer, Integer> entry : docIds.entrySet()) {
+            visitor.visit(entry.getKey().array(), entry.getValue());
+        }
+    }
+
+    @Override
+    public long count() {
+        return docIds.size();
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
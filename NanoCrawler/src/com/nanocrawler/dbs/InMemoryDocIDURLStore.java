@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Doc ID -> URL store that keeps the URLs only in memory
+public class InMemoryDocIDURLStore implements DocIDURLStore {
+
+    private final ConcurrentHashMap<Integer, String> urls = new ConcurrentHashMap<>();
+
+    @Override
+    public String get(int docId) {
+        return urls.get(docId);
+    }
+
+    @Override
+    public void put(int docId, String url) {
+        urls.put(docId, url);
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
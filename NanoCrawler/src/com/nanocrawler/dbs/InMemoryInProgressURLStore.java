@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.urlmanipulation.WebURL;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// In progress URL store that keeps the URLs only in memory
+public class InMemoryInProgressURLStore implements InProgressURLStore {
+
+    private final Map<Integer, WebURL> urls = new HashMap<>();
+
+    @Override
+    public synchronized void put(WebURL url) {
+        urls.put(url.getDocid(), url);
+    }
+
+    @Override
+    public synchronized boolean remove(int docid) {
+        return urls.remove(docid) != null;
+    }
+
+    @Override
+    public synchronized List<WebURL> getAll() {
+        return new ArrayList<>(urls.values());
+    }
+
+    @Override
+    public synchronized long getCount() {
+        return urls.size();
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.util.CrawlConfig;
+
+// Storage that keeps everything in memory, nothing survives the crawl. The off-heap doc ID store can be used
+// with it, but without a snapshot file
+public class InMemoryStorageFactory implements StorageFactory {
+
+    private final CrawlConfig config;
+
+    // Constructor
+    public InMemoryStorageFactory(CrawlConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public DocIDStore createDocIDStore(String name) {
+        if (config.getDocIdBackend() == CrawlConfig.DocIDBackend.OFF_HEAP) {
+            return new OffHeapDocIDStore(config.getOffHeapDocIdExpectedUrls(), null);
+        }
+        return new InMemoryDocIDStore();
+    }
+
+    @Override
+    public DocIDURLStore createDocIDURLStore(String name) {
+        return new InMemoryDocIDURLStore();
+    }
+
+    @Override
+    public URLQueue createURLQueue(String name) {
+        return new InMemoryURLQueue();
+    }
+
+    @Override
+    public InProgressURLStore createInProgressURLStore(String name) {
+        return new InMemoryInProgressURLStore();
+    }
+
+    @Override
+    public CounterStore createCounterStore(String name) {
+        return new InMemoryCounterStore();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.urlmanipulation.WebURL;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Work queue that keeps the URLs only in memory, in the same key order as CrawledURLQueueServer
+public class InMemoryURLQueue implements URLQueue {
+
+    protected final TreeMap<byte[], WebURL> urls = new TreeMap<>(CrawledURLQueueServer::compareKeys);
+
+    @Override
+    public synchronized void putURLToQueue(String partition, WebURL url) {
+        byte[] prefix = getPartitionPrefix(partition);
+        byte[] priorityKey = CrawledURLQueueServer.getPriorityKey(url);
+        byte[] key = Arrays.copyOf(prefix, prefix.length + priorityKey.length);
+        System.arraycopy(priorityKey, 0, key, prefix.length, priorityKey.length);
+        urls.put(key, url);
+    }
+
+    @Override
+    public synchronized byte[] poll(String partition, int max, List<WebURL> results) {
+        byte[] prefix = getPartitionPrefix(partition);
+        SortedMap<byte[], WebURL> range = getRange(prefix);
+        int matches = 0;
+        Iterator<WebURL> it = range.values().iterator();
+        while (matches < max && it.hasNext()) {
+            results.add(it.next());
+            it.remove();
+            matches++;
+        }
+        if (range.isEmpty()) {
+            return null;
+        }
+        byte[] key = range.firstKey();
+        return Arrays.copyOfRange(key, prefix.length, key.length);
+    }
+
+    @Override
+    public synchronized Map<String, byte[]> getPartitionHeads(boolean partitioned) {
+        Map<String, byte[]> heads = new LinkedHashMap<>();
+        byte[] key = urls.isEmpty() ? null : urls.firstKey();
+        while (key != null) {
+            if (!partitioned) {
+                heads.put("", key);
+                break;
+            }
+            int end = 0;
+            while (end < key.length && key[end] != 0) {
+                end++;
+            }
+            heads.put(new String(key, 0, end, StandardCharsets.UTF_8), Arrays.copyOfRange(key, end + 1, key.length));
+            byte[] next = Arrays.copyOf(key, end + 1);
+            next[end] = 1;
+            key = urls.ceilingKey(next);
+        }
+        return heads;
+    }
+
+    @Override
+    public synchronized long getCrawlQueueLength() {
+        return urls.size();
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // Returns the URLs of the partition, all of them for the empty partition
+    private SortedMap<byte[], WebURL> getRange(byte[] prefix) {
+        if (prefix.length == 0) {
+            return urls;
+        }
+        byte[] end = prefix.clone();
+        end[end.length - 1] = 1;
+        return urls.subMap(prefix, end);
+    }
+
+    // Partition prefix is the UTF-8 host name terminated with a zero byte
+    private static byte[] getPartitionPrefix(String partition) {
+        if (partition == null || partition.isEmpty()) {
+            return new byte[0];
+        }
+        byte[] name = partition.getBytes(StandardCharsets.UTF_8);
+        return Arrays.copyOf(name, name.length + 1);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.urlmanipulation.WebURL;
+import com.nanocrawler.util.ContentTypeUtil;
+import com.sleepycat.je.Cursor;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.OperationStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// DB server for URLs that have been handed out to crawlers but not yet processed, keyed by doc ID
+public class InProgressURLServer implements InProgressURLStore {
+
+    protected Database urlsDB = null;
+    protected WebURLTupleBinding webURLBinding;
+    protected final Object mutex = new Object();
+
+    // Constructor
+    public InProgressURLServer(Environment env, String dbName) throws DatabaseException {
+        this(env, dbName, new WebURLTupleBinding());
+    }
+
+    // Constructor, URLs are stored with the given binding
+    public InProgressURLServer(Environment env, String dbName, WebURLTupleBinding webURLBinding) throws DatabaseException {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setAllowCreate(true);
+        dbConfig.setTransactional(false);
+        dbConfig.setDeferredWrite(true);
+        urlsDB = env.openDatabase(null, dbName, dbConfig);
+        this.webURLBinding = webURLBinding;
+    }
+
+    // Stores the URL as in progress
+    @Override
+    public void put(WebURL url) throws DatabaseException {
+        DatabaseEntry value = new DatabaseEntry();
+        webURLBinding.objectToEntry(url, value);
+        synchronized (mutex) {
+            urlsDB.put(null, new DatabaseEntry(ContentTypeUtil.int2ByteArray(url.getDocid())), value);
+        }
+    }
+
+    // Removes the URL with given doc ID, returns true if it was in progress
+    @Override
+    public boolean remove(int docid) throws DatabaseException {
+        synchronized (mutex) {
+            return urlsDB.delete(null, new DatabaseEntry(ContentTypeUtil.int2ByteArray(docid))) == OperationStatus.SUCCESS;
+        }
+    }
+
+    // Returns all URLs in progress
+    @Override
+    public List<WebURL> getAll() throws DatabaseException {
+        synchronized (mutex) {
+            List<WebURL> results = new ArrayList<>();
+            Cursor cursor = null;
+            DatabaseEntry key = new DatabaseEntry();
+            DatabaseEntry value = new DatabaseEntry();
+            try {
+                cursor = urlsDB.openCursor(null, null);
+                while (cursor.getNext(key, value, null) == OperationStatus.SUCCESS) {
+                    results.add(webURLBinding.entryToObject(value));
+                }
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            return results;
+        }
+    }
+
+    // Returns number of URLs in progress
+    @Override
+    public long getCount() {
+        try {
+            return urlsDB.count();
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        }
+        return -1;
+    }
+
+    // Writes cached changes to disk
+    @Override
+    public void sync() {
+        if (urlsDB == null) {
+            return;
+        }
+        try {
+            urlsDB.sync();
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Closes the DB
+    @Override
+    public void close() {
+        try {
+            urlsDB.close();
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        }
+    }
+}
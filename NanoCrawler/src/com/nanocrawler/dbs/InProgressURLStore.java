@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.urlmanipulation.WebURL;
+
+import java.util.List;
+
+// Storage for URLs that have been handed out to crawlers but not yet processed, keyed by doc ID
+public interface InProgressURLStore {
+
+    // Stores the URL as in progress
+    public void put(WebURL url);
+
+    // Removes the URL with given doc ID, returns true if it was in progress
+    public boolean remove(int docid);
+
+    // Returns all URLs in progress
+    public List<WebURL> getAll();
+
+    // Returns number of URLs in progress
+    public long getCount();
+
+    // Writes cached information to disk
+    public void sync();
+
+    // Closes the store
+    public void close();
+}
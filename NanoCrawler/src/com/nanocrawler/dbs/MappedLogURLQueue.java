@@ -0,0 +1,442 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.urlmanipulation.WebURL;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+// Work queue built on segmented append-only memory-mapped files. URLs are queued FIFO in buckets by priority and
+// depth (the first two bytes of the priority key) and buckets are served in key order, so the queue costs only
+// sequential writes and reads instead of B-tree inserts and deletes. Each segment file starts with a header holding
+// its read and write offsets. The offsets are kept in memory and written to the headers only on sync(), which is the
+// frontier's checkpoint. In checkpointed mode (resumable crawls) segments that have been read through are unmapped
+// and deleted only on sync too, so a crawl resumed after a crash sees the queue as it was at the last checkpoint,
+// like the rest of the crawl state. Otherwise they are deleted right away. Host partitions are not supported
+public class MappedLogURLQueue implements URLQueue {
+    private static final Logger logger = Logger.getLogger(MappedLogURLQueue.class.getName());
+
+    private static final int SEGMENT_MAGIC = 0x4E434C51;
+    private static final int HEADER_SIZE = 16;
+    private static final int READ_OFFSET_POSITION = 4;
+    private static final int WRITE_OFFSET_POSITION = 8;
+
+    // Fixed part of a record: length, doc ID, parent doc ID, depth, priority and lengths of the three strings
+    private static final int RECORD_FIXED_SIZE = 4 + 4 + 4 + 2 + 1 + 3 * 4;
+
+    protected final Object mutex = new Object();
+
+    private final File directory;
+    private final int segmentSize;
+    private final boolean checkpointed;
+    private final TreeMap<Integer, Bucket> buckets = new TreeMap<>();
+    // Segments read through since the last sync, deleted on the next sync
+    private final List<Segment> consumedSegments = new ArrayList<>();
+    private long count = 0;
+
+    // Single log file, readOffset and writeOffset are written to the file header on sync
+    private static class Segment {
+        private final File file;
+        private final long sequence;
+        private final MappedByteBuffer buffer;
+        private int readOffset;
+        private int writeOffset;
+
+        private Segment(File file, long sequence, MappedByteBuffer buffer) {
+            this.file = file;
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+    }
+
+    // Segment chain of a single priority / depth bucket, oldest segment first
+    private static class Bucket {
+        private final int key;
+        private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+        private long count = 0;
+        // Sequence number of the next segment, consumed segments may still be on disk until the next sync
+        private long nextSequence = 0;
+
+        private Bucket(int key) {
+            this.key = key;
+        }
+    }
+
+    // Constructor, read through segments are deleted right away
+    public MappedLogURLQueue(File directory, int segmentSize) {
+        this(directory, segmentSize, false);
+    }
+
+    // Constructor, existing segments in the directory are opened and their unread URLs are kept in the queue. In
+    // checkpointed mode read through segments are kept until the next sync
+    public MappedLogURLQueue(File directory, int segmentSize, boolean checkpointed) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.checkpointed = checkpointed;
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new RuntimeException("Could not create log queue folder: " + directory.getAbsolutePath());
+        }
+        try {
+            openSegments();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open log queue in " + directory.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void putURLToQueue(String partition, WebURL url) {
+        checkPartition(partition);
+        byte[] urlBytes = getBytes(url.getURL());
+        byte[] parentUrlBytes = getBytes(url.getParentUrl());
+        byte[] anchorBytes = getBytes(url.getAnchor());
+        int length = RECORD_FIXED_SIZE + size(urlBytes) + size(parentUrlBytes) + size(anchorBytes);
+
+        synchronized (mutex) {
+            byte[] priorityKey = CrawledURLQueueServer.getPriorityKey(url);
+            int key = ((priorityKey[0] & 0xFF) << 8) | (priorityKey[1] & 0xFF);
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket(key);
+                buckets.put(key, bucket);
+            }
+
+            Segment segment = bucket.segments.peekLast();
+            if (segment == null || segment.writeOffset + length > segment.buffer.capacity()) {
+                segment = createSegment(key, bucket.nextSequence++, Math.max(segmentSize, HEADER_SIZE + length));
+                bucket.segments.addLast(segment);
+            }
+
+            ByteBuffer out = segment.buffer.duplicate();
+            out.position(segment.writeOffset);
+            out.putInt(length);
+            out.putInt(url.getDocid());
+            out.putInt(url.getParentDocid());
+            out.putShort(url.getDepth());
+            out.put(url.getPriority());
+            putBytes(out, urlBytes);
+            putBytes(out, parentUrlBytes);
+            putBytes(out, anchorBytes);
+
+            segment.writeOffset += length;
+            bucket.count++;
+            count++;
+        }
+    }
+
+    @Override
+    public byte[] poll(String partition, int max, List<WebURL> results) {
+        checkPartition(partition);
+        synchronized (mutex) {
+            int matches = 0;
+            for (Bucket bucket : buckets.values()) {
+                while (matches < max && bucket.count > 0) {
+                    results.add(read(bucket));
+                    matches++;
+                }
+                if (matches >= max) {
+                    break;
+                }
+            }
+            return getHeadKey();
+        }
+    }
+
+    @Override
+    public Map<String, byte[]> getPartitionHeads(boolean partitioned) {
+        synchronized (mutex) {
+            byte[] head = getHeadKey();
+            if (head == null) {
+                return Collections.emptyMap();
+            }
+            return Collections.singletonMap("", head);
+        }
+    }
+
+    @Override
+    public long getCrawlQueueLength() {
+        synchronized (mutex) {
+            return count;
+        }
+    }
+
+    // Writes the read and write offsets to the segment headers and forces the segments to disk, then deletes the
+    // segments read through since the last sync and drops the drained buckets
+    @Override
+    public void sync() {
+        synchronized (mutex) {
+            Iterator<Bucket> it = buckets.values().iterator();
+            while (it.hasNext()) {
+                Bucket bucket = it.next();
+                if (bucket.count == 0) {
+                    // Drained bucket, its files are deleted below together with the other consumed segments
+                    consumedSegments.addAll(bucket.segments);
+                    it.remove();
+                    continue;
+                }
+                for (Segment segment : bucket.segments) {
+                    segment.buffer.putInt(READ_OFFSET_POSITION, segment.readOffset);
+                    segment.buffer.putInt(WRITE_OFFSET_POSITION, segment.writeOffset);
+                    segment.buffer.force();
+                }
+            }
+            for (Segment segment : consumedSegments) {
+                delete(segment);
+            }
+            consumedSegments.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        sync();
+        synchronized (mutex) {
+            for (Bucket bucket : buckets.values()) {
+                for (Segment segment : bucket.segments) {
+                    unmap(segment.buffer);
+                }
+            }
+            buckets.clear();
+        }
+    }
+
+    // Reads the next URL of the bucket and retires the segment if it has been read through. The last segment of the
+    // bucket is kept for appending unless the bucket has been drained
+    private WebURL read(Bucket bucket) {
+        Segment segment = bucket.segments.peekFirst();
+        // Segments left read through by a previous run
+        while (segment.readOffset >= segment.writeOffset) {
+            retire(bucket);
+            segment = bucket.segments.peekFirst();
+        }
+
+        // Numbers are read in place from the mapped file, only the strings are copied out
+        ByteBuffer in = segment.buffer.duplicate();
+        in.position(segment.readOffset);
+        int length = in.getInt();
+        WebURL url = new WebURL();
+        url.setDocid(in.getInt());
+        url.setParentDocid(in.getInt());
+        url.setDepth(in.getShort());
+        url.setPriority(in.get());
+        url.setURL(getString(in));
+        url.setParentUrl(getString(in));
+        url.setAnchor(getString(in));
+
+        segment.readOffset += length;
+        bucket.count--;
+        count--;
+
+        if (segment.readOffset >= segment.writeOffset && (bucket.segments.size() > 1 || bucket.count == 0)) {
+            retire(bucket);
+        }
+        return url;
+    }
+
+    // Takes the first segment of the bucket out of the queue. In checkpointed mode its file is kept until the next
+    // sync, so that the URLs in it are still there if the crawl is resumed from the last checkpoint
+    private void retire(Bucket bucket) {
+        Segment segment = bucket.segments.pollFirst();
+        if (checkpointed) {
+            consumedSegments.add(segment);
+        } else {
+            delete(segment);
+        }
+    }
+
+    // Unmaps and deletes the segment. The mapping is released first, a file that is still mapped cannot be deleted
+    // on Windows and its pages stay allocated until the buffer is garbage collected
+    private void delete(Segment segment) {
+        unmap(segment.buffer);
+        if (!segment.file.delete()) {
+            logger.warn("Could not delete consumed log segment: " + segment.file.getAbsolutePath());
+        }
+    }
+
+    // Priority key of the first URL in the queue
+    private byte[] getHeadKey() {
+        for (Bucket bucket : buckets.values()) {
+            if (bucket.count == 0) {
+                continue;
+            }
+            for (Segment segment : bucket.segments) {
+                if (segment.readOffset < segment.writeOffset) {
+                    byte[] key = new byte[6];
+                    key[0] = (byte) (bucket.key >>> 8);
+                    key[1] = (byte) bucket.key;
+                    int docid = segment.buffer.getInt(segment.readOffset + 4);
+                    key[2] = (byte) (docid >>> 24);
+                    key[3] = (byte) (docid >>> 16);
+                    key[4] = (byte) (docid >>> 8);
+                    key[5] = (byte) docid;
+                    return key;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Segment createSegment(int bucketKey, long sequence, int size) {
+        File file = new File(directory, String.format("%04x-%012d.seg", bucketKey, sequence));
+        try {
+            Segment segment = new Segment(file, sequence, map(file, size));
+            segment.readOffset = HEADER_SIZE;
+            segment.writeOffset = HEADER_SIZE;
+            segment.buffer.putInt(0, SEGMENT_MAGIC);
+            segment.buffer.putInt(READ_OFFSET_POSITION, HEADER_SIZE);
+            segment.buffer.putInt(WRITE_OFFSET_POSITION, HEADER_SIZE);
+            return segment;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create log segment " + file.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Opens the segments left in the directory and counts their unread URLs
+    private void openSegments() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".seg"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName();
+            int bucketKey = Integer.parseInt(name.substring(0, 4), 16);
+            long sequence = Long.parseLong(name.substring(5, name.length() - 4));
+
+            Segment segment = new Segment(file, sequence, map(file, (int) file.length()));
+            if (segment.buffer.getInt(0) != SEGMENT_MAGIC) {
+                throw new IOException("Unknown segment format: " + name);
+            }
+            segment.readOffset = segment.buffer.getInt(READ_OFFSET_POSITION);
+            segment.writeOffset = segment.buffer.getInt(WRITE_OFFSET_POSITION);
+
+            Bucket bucket = buckets.get(bucketKey);
+            if (bucket == null) {
+                bucket = new Bucket(bucketKey);
+                buckets.put(bucketKey, bucket);
+            }
+            bucket.segments.addLast(segment);
+            bucket.nextSequence = sequence + 1;
+
+            for (int offset = segment.readOffset; offset < segment.writeOffset; offset += segment.buffer.getInt(offset)) {
+                bucket.count++;
+                count++;
+            }
+        }
+        // Buckets the previous run drained without reclaiming their last segment
+        Iterator<Bucket> it = buckets.values().iterator();
+        while (it.hasNext()) {
+            Bucket bucket = it.next();
+            if (bucket.count == 0) {
+                for (Segment segment : bucket.segments) {
+                    delete(segment);
+                }
+                it.remove();
+            }
+        }
+        if (count > 0) {
+            logger.info("Opened log queue with " + count + " URLs in " + buckets.size() + " buckets");
+        }
+    }
+
+    // Maps the file to memory, the mapping stays valid after the file is closed
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    // Releases the mapping right away instead of waiting for the buffer to be garbage collected, the buffer must not
+    // be used afterwards. There is no public API for this: Unsafe.invokeCleaner is used on Java 9+ and the buffer's
+    // cleaner on Java 8. If neither is available the mapping is left to the garbage collector
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (Exception e) {
+            logger.debug("Could not unmap log segment, leaving it to the garbage collector: " + e);
+        }
+    }
+
+    private static void checkPartition(String partition) {
+        if (partition != null && !partition.isEmpty()) {
+            throw new UnsupportedOperationException("Mapped log queue does not support host partitions");
+        }
+    }
+
+    private static byte[] getBytes(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int size(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    // Strings are stored as length and UTF-8 bytes, -1 length for null
+    private static void putBytes(ByteBuffer out, byte[] bytes) {
+        if (bytes == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(bytes.length);
+            out.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,310 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.log4j.Logger;
+
+// In-memory doc ID store for crawls that fit in RAM. Maps 64-bit URL fingerprints to doc IDs in open addressing
+// hash tables that live in direct byte buffers, so there are no per-entry objects for the GC to trace.
+// The tables are snapshotted to a file on sync / close and loaded back from it on startup
+public class OffHeapDocIDStore implements DocIDStore {
+    private static final Logger logger = Logger.getLogger(OffHeapDocIDStore.class.getName());
+
+    // Slot layout: 8 bytes key + 4 bytes doc ID, doc ID 0 marks an empty slot (doc IDs start from 1)
+    private static final int SLOT_SIZE = 12;
+
+    // Number of segments (power of two), each segment is a separate table with its own lock
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    // Largest segment table that fits to a single byte buffer
+    private static final int MAX_SEGMENT_CAPACITY = Integer.highestOneBit(Integer.MAX_VALUE / SLOT_SIZE);
+
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+
+    private static final int SNAPSHOT_MAGIC = 0x4E434449;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_SIZE = 12;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final File snapshotFile;
+
+    // Single hash table
+    private static class Segment {
+        private ByteBuffer table;
+        private int capacity;
+        private int size;
+
+        private Segment(int capacity) {
+            this.capacity = capacity;
+            this.table = ByteBuffer.allocateDirect(capacity * SLOT_SIZE);
+        }
+    }
+
+    // Constructor, expectedUrls is used for sizing the tables so that they do not have to grow during the crawl.
+    // If snapshot file exists, the tables are loaded from it
+    public OffHeapDocIDStore(long expectedUrls, File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+
+        long perSegment = (long) Math.ceil(expectedUrls / (double) SEGMENTS / MAX_LOAD_FACTOR);
+        int capacity = (int) Math.min(MAX_SEGMENT_CAPACITY, Math.max(16, Long.highestOneBit(Math.max(1, perSegment - 1)) << 1));
+
+        if (snapshotFile != null && snapshotFile.exists() && snapshotFile.length() > 0) {
+            load(capacity);
+        } else {
+            for (int i = 0; i < SEGMENTS; i++) {
+                segments[i] = new Segment(capacity);
+            }
+        }
+    }
+
+    // Decodes the 8-byte key (big-endian fingerprint)
+    private static long toLong(byte[] key) {
+        if (key.length != 8) {
+            throw new IllegalArgumentException("Off-heap doc ID store requires 8-byte fingerprint keys, got " + key.length + " bytes");
+        }
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (key[i] & 0xFF);
+        }
+        return value;
+    }
+
+    // Encodes the key back to bytes
+    private static byte[] toBytes(long value) {
+        byte[] key = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            key[i] = (byte) value;
+            value >>>= 8;
+        }
+        return key;
+    }
+
+    // Segment is chosen by the highest bits and slot by the lowest bits of the fingerprint
+    private Segment getSegment(long key) {
+        return segments[(int) (key >>> (64 - SEGMENT_BITS))];
+    }
+
+    // Returns the slot index of the key, or the empty slot where it should be inserted
+    private static int findSlot(Segment segment, long key) {
+        int mask = segment.capacity - 1;
+        int slot = (int) key & mask;
+        while (true) {
+            int offset = slot * SLOT_SIZE;
+            if (segment.table.getInt(offset + 8) == 0 || segment.table.getLong(offset) == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public int get(byte[] key) {
+        long k = toLong(key);
+        Segment segment = getSegment(k);
+        synchronized (segment) {
+            int docId = segment.table.getInt(findSlot(segment, k) * SLOT_SIZE + 8);
+            return docId == 0 ? -1 : docId;
+        }
+    }
+
+    @Override
+    public void put(byte[] key, int docId) {
+        if (docId <= 0) {
+            throw new IllegalArgumentException("Invalid doc id: " + docId);
+        }
+        long k = toLong(key);
+        Segment segment = getSegment(k);
+        synchronized (segment) {
+            int offset = findSlot(segment, k) * SLOT_SIZE;
+            if (segment.table.getInt(offset + 8) == 0) {
+                segment.size++;
+            }
+            segment.table.putLong(offset, k);
+            segment.table.putInt(offset + 8, docId);
+            if (segment.size > segment.capacity * MAX_LOAD_FACTOR) {
+                grow(segment);
+            }
+        }
+    }
+
+    // Doubles the size of the segment table
+    private static void grow(Segment segment) {
+        if (segment.capacity >= MAX_SEGMENT_CAPACITY) {
+            if (segment.size >= segment.capacity - 1) {
+                throw new IllegalStateException("Off-heap doc ID store segment is full");
+            }
+            return;
+        }
+
+        ByteBuffer oldTable = segment.table;
+        int oldCapacity = segment.capacity;
+        segment.capacity = oldCapacity << 1;
+        segment.table = ByteBuffer.allocateDirect(segment.capacity * SLOT_SIZE);
+        for (int i = 0; i < oldCapacity; i++) {
+            int offset = i * SLOT_SIZE;
+            int docId = oldTable.getInt(offset + 8);
+            if (docId != 0) {
+                long k = oldTable.getLong(offset);
+                int newOffset = findSlot(segment, k) * SLOT_SIZE;
+                segment.table.putLong(newOffset, k);
+                segment.table.putInt(newOffset + 8, docId);
+            }
+        }
+    }
+
+    @Override
+    // Hash tables have no key order to exploit, so the batch just delegates to the store
+    public Batch openBatch() {
+        return new Batch() {
+            @Override
+            public int get(byte[] key) {
+                return OffHeapDocIDStore.this.get(key);
+            }
+
+            @Override
+            public void put(byte[] key, int docId) {
+                OffHeapDocIDStore.this.put(key, docId);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (int i = 0; i < segment.capacity; i++) {
+                    int offset = i * SLOT_SIZE;
+                    int docId = segment.table.getInt(offset + 8);
+                    if (docId != 0) {
+                        visitor.visit(toBytes(segment.table.getLong(offset)), docId);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public long count() {
+        long count = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                count += segment.size;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    // Snapshots the tables to a temporary file through its channel and moves it over the snapshot file, so a crash in
+    // the middle of a sync leaves the previous snapshot intact
+    public void sync() {
+        if (snapshotFile == null) {
+            return;
+        }
+
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            try (RandomAccessFile file = new RandomAccessFile(tempFile, "rw");
+                 FileChannel channel = file.getChannel()) {
+                file.setLength(0);
+                ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+                header.putInt(SNAPSHOT_MAGIC);
+                header.putInt(SNAPSHOT_VERSION);
+                header.putInt(SEGMENTS);
+                header.flip();
+                writeFully(channel, header);
+
+                ByteBuffer segmentHeader = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+                for (Segment segment : segments) {
+                    synchronized (segment) {
+                        segmentHeader.clear();
+                        segmentHeader.putInt(segment.capacity);
+                        segmentHeader.putInt(segment.size);
+                        segmentHeader.flip();
+                        writeFully(channel, segmentHeader);
+                        ByteBuffer source = segment.table.duplicate();
+                        source.clear();
+                        writeFully(channel, source);
+                    }
+                }
+                channel.force(true);
+            }
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.error("Could not snapshot doc ID store to " + snapshotFile.getAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // Loads the tables from the snapshot file, segments are grown to the configured minimum capacity if needed
+    private void load(int minCapacity) {
+        try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+             FileChannel channel = file.getChannel()) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SNAPSHOT_HEADER_SIZE);
+            if (header.getInt() != SNAPSHOT_MAGIC || header.getInt() != SNAPSHOT_VERSION || header.getInt() != SEGMENTS) {
+                throw new IOException("Unknown snapshot format");
+            }
+
+            long position = SNAPSHOT_HEADER_SIZE;
+            for (int i = 0; i < SEGMENTS; i++) {
+                MappedByteBuffer segmentHeader = channel.map(FileChannel.MapMode.READ_ONLY, position, SEGMENT_HEADER_SIZE);
+                int capacity = segmentHeader.getInt();
+                int size = segmentHeader.getInt();
+                long length = (long) capacity * SLOT_SIZE;
+
+                Segment segment = new Segment(capacity);
+                segment.size = size;
+                segment.table.put(channel.map(FileChannel.MapMode.READ_ONLY, position + SEGMENT_HEADER_SIZE, length));
+                while (segment.capacity < minCapacity) {
+                    grow(segment);
+                }
+                segments[i] = segment;
+                position += SEGMENT_HEADER_SIZE + length;
+            }
+            logger.info("Loaded " + count() + " doc IDs from " + snapshotFile.getAbsolutePath());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not load doc ID store snapshot " + snapshotFile.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        sync();
+    }
+}
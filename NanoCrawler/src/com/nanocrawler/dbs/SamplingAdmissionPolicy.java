@@ -0,0 +1,53 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.urlmanipulation.WebURL;
+import com.nanocrawler.util.CrawlConfig;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Default admission policy: URLs with a priority number below the configured threshold (i.e. more important) or
+// at most the configured depth are always admitted, the low-priority and deep ones are sampled at the configured rate
+public class SamplingAdmissionPolicy implements AdmissionPolicy {
+
+    private final int priorityThreshold;
+    private final int maxDepth;
+    private final double sampleRate;
+
+    // Constructor, thresholds are taken from the configuration
+    public SamplingAdmissionPolicy(CrawlConfig config) {
+        this(config.getAdmissionPriorityThreshold(), config.getAdmissionMaxDepth(), config.getAdmissionSampleRate());
+    }
+
+    // Constructor
+    public SamplingAdmissionPolicy(int priorityThreshold, int maxDepth, double sampleRate) {
+        this.priorityThreshold = priorityThreshold;
+        this.maxDepth = maxDepth;
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public boolean admit(WebURL url) {
+        if (url.getPriority() < priorityThreshold || url.getDepth() <= maxDepth) {
+            return true;
+        }
+        return ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+}
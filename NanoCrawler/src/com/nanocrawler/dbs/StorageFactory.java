@@ -0,0 +1,42 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+// Creates the stores behind Frontier, DocIDServer and CrawlStatisticsServer. Stores are named, so the same name
+// opens the same data again on a persistent backend
+public interface StorageFactory {
+
+    // Creates URL key -> doc ID store
+    public DocIDStore createDocIDStore(String name);
+
+    // Creates doc ID -> URL store
+    public DocIDURLStore createDocIDURLStore(String name);
+
+    // Creates work queue of the frontier
+    public URLQueue createURLQueue(String name);
+
+    // Creates store for URLs in progress
+    public InProgressURLStore createInProgressURLStore(String name);
+
+    // Creates store for named counters
+    public CounterStore createCounterStore(String name);
+
+    // Closes the backend, the stores have to be closed first
+    public void close();
+}
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Dictionary of URL prefixes (scheme and host) for the compact URL encoding, so queued URLs only store the
+// prefix ID and the path. New prefixes are appended to the dictionary file right away, before any record using them
+// can reach the DB, and the file is loaded back on startup
+public class URLPrefixDictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> prefixes = new ArrayList<>();
+    private Writer writer = null;
+
+    // Constructor, null file keeps the dictionary only in memory
+    public URLPrefixDictionary(File file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            if (file.exists()) {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        ids.put(line, prefixes.size());
+                        prefixes.add(line);
+                    }
+                }
+            }
+            writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open URL prefix dictionary " + file.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Returns ID of the prefix, adding it to the dictionary if needed
+    public synchronized int getId(String prefix) {
+        Integer id = ids.get(prefix);
+        if (id != null) {
+            return id;
+        }
+        id = prefixes.size();
+        if (writer != null) {
+            try {
+                writer.write(prefix);
+                writer.write('\n');
+                writer.flush();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write URL prefix dictionary: " + e.getMessage(), e);
+            }
+        }
+        ids.put(prefix, id);
+        prefixes.add(prefix);
+        return id;
+    }
+
+    // Returns prefix of the ID
+    public synchronized String getPrefix(int id) {
+        return prefixes.get(id);
+    }
+
+    // Returns number of prefixes
+    public synchronized int size() {
+        return prefixes.size();
+    }
+
+    // Closes the dictionary file
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writer = null;
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import com.nanocrawler.urlmanipulation.WebURL;
+
+import java.util.List;
+import java.util.Map;
+
+// Storage engine of the frontier's work queue. URLs are queued under a partition (host), empty partition
+// is the global queue. Within a partition URLs come out in the order of their priority keys
+public interface URLQueue {
+
+    // Puts new URL to the queue of the given partition
+    public void putURLToQueue(String partition, WebURL url);
+
+    // Takes at most max URLs from the head of the partition to results and returns the priority key of the URL
+    // that is next in line, or null if the partition was drained
+    public byte[] poll(String partition, int max, List<WebURL> results);
+
+    // Returns the priority key of the first URL of each non-empty partition
+    public Map<String, byte[]> getPartitionHeads(boolean partitioned);
+
+    // Returns amount of URLs on the queue
+    public long getCrawlQueueLength();
+
+    // Writes cached changes to disk
+    public void sync();
+
+    // Closes the queue
+    public void close();
+}
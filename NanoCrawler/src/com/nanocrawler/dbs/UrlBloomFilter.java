@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.dbs;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Thread-safe Bloom filter over 64-bit URL fingerprints. Answers "definitely not seen" without
+// touching the database, positive answers still have to be checked from the database
+public class UrlBloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashes;
+    private final AtomicLong insertions = new AtomicLong();
+
+    // Constructor, sizes the filter for the expected amount of URLs and the wanted false positive rate
+    public UrlBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, m);
+
+        this.bits = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, (m + 63) >>> 6));
+        this.numBits = (long) bits.length() << 6;
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+    }
+
+    // Adds fingerprint to the filter
+    public void put(long fingerprint) {
+        long hash = fingerprint;
+        long step = mix(fingerprint);
+        for (int i = 0; i < numHashes; i++) {
+            long index = (hash & Long.MAX_VALUE) % numBits;
+            setBit(index);
+            hash += step;
+        }
+        insertions.incrementAndGet();
+    }
+
+    // Returns false if the fingerprint has definitely not been added to the filter
+    public boolean mightContain(long fingerprint) {
+        long hash = fingerprint;
+        long step = mix(fingerprint);
+        for (int i = 0; i < numHashes; i++) {
+            long index = (hash & Long.MAX_VALUE) % numBits;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+            hash += step;
+        }
+        return true;
+    }
+
+    // Theoretical false positive rate with the current amount of insertions
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-numHashes * (double) insertions.get() / numBits), numHashes);
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    // Sets a single bit without locking
+    private void setBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long prev;
+        do {
+            prev = bits.get(word);
+            if ((prev & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(word, prev, prev | mask));
+    }
+
+    // Second hash derived from the fingerprint for double hashing, always odd
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h | 1;
+    }
+}
@@ -23,11 +23,43 @@ import com.sleepycat.bind.tuple.TupleInput;
 import com.sleepycat.bind.tuple.TupleOutput;
 import com.nanocrawler.urlmanipulation.WebURL;
 
-// Tuple binding for URLs for storing them to a Berkley DB
+import java.nio.charset.StandardCharsets;
+
+// Tuple binding for URLs for storing them to a Berkley DB. Records are written either in the original format
+// (full strings) or in the compact format: version byte, packed ints, URL as a prefix dictionary ID and the rest
+// of the URL, parent URL left out when it can be looked up by parent doc ID, and optionally truncated anchor.
+// Both formats can always be read, original records start with a printable character or 0xFF (null URL)
 public class WebURLTupleBinding extends TupleBinding<WebURL> {
 
+    private static final int COMPACT_FORMAT = 0x01;
+
+    private static final int FLAG_PARENT_URL = 0x01;
+    private static final int FLAG_ANCHOR = 0x02;
+
+    private final URLPrefixDictionary dictionary;
+    private final boolean omitParentUrl;
+    private final int maxAnchorLength;
+
+    // Constructor, URLs are written in the original format
+    public WebURLTupleBinding() {
+        this(null, false, -1);
+    }
+
+    // Constructor, URLs are written in the compact format. Parent URL is left out if omitParentUrl is set and the URL
+    // has a parent doc ID, anchors are truncated to maxAnchorLength characters (-1 keeps them whole)
+    public WebURLTupleBinding(URLPrefixDictionary dictionary, boolean omitParentUrl, int maxAnchorLength) {
+        this.dictionary = dictionary;
+        this.omitParentUrl = omitParentUrl;
+        this.maxAnchorLength = maxAnchorLength;
+    }
+
     @Override
     public WebURL entryToObject(TupleInput input) {
+        if (input.available() > 0 && input.getBufferBytes()[input.getBufferOffset()] == COMPACT_FORMAT) {
+            input.skipFast(1);
+            return compactEntryToObject(input);
+        }
+
         WebURL webURL = new WebURL();
         webURL.setURL(input.readString());
         webURL.setDocid(input.readInt());
@@ -41,6 +73,11 @@ public class WebURLTupleBinding extends TupleBinding<WebURL> {
 
     @Override
     public void objectToEntry(WebURL url, TupleOutput output) {
+        if (dictionary != null) {
+            compactObjectToEntry(url, output);
+            return;
+        }
+
         output.writeString(url.getURL());
         output.writeInt(url.getDocid());
         output.writeInt(url.getParentDocid());
@@ -49,4 +86,75 @@ public class WebURLTupleBinding extends TupleBinding<WebURL> {
         output.writeByte(url.getPriority());
         output.writeString(url.getAnchor());
     }
+
+    private WebURL compactEntryToObject(TupleInput input) {
+        WebURL webURL = new WebURL();
+        int flags = input.readUnsignedByte();
+        webURL.setDocid(input.readPackedInt());
+        webURL.setParentDocid(input.readPackedInt());
+        webURL.setDepth((short) input.readPackedInt());
+        webURL.setPriority(input.readByte());
+        String prefix = dictionary(input.readPackedInt());
+        webURL.setURL(prefix + readBytes(input));
+        if ((flags & FLAG_PARENT_URL) != 0) {
+            webURL.setParentUrl(readBytes(input));
+        }
+        if ((flags & FLAG_ANCHOR) != 0) {
+            webURL.setAnchor(readBytes(input));
+        }
+        return webURL;
+    }
+
+    private void compactObjectToEntry(WebURL url, TupleOutput output) {
+        String parentUrl = url.getParentUrl();
+        if (omitParentUrl && url.getParentDocid() > 0) {
+            parentUrl = null;
+        }
+        String anchor = url.getAnchor();
+        if (anchor != null && maxAnchorLength >= 0 && anchor.length() > maxAnchorLength) {
+            anchor = anchor.substring(0, maxAnchorLength);
+        }
+
+        // Prefix is the scheme and host part, i.e. everything before the path
+        String urlString = url.getURL();
+        int pathStart = urlString.indexOf('/', urlString.indexOf("//") + 2);
+        if (pathStart < 0) {
+            pathStart = urlString.length();
+        }
+
+        output.writeUnsignedByte(COMPACT_FORMAT);
+        output.writeUnsignedByte((parentUrl != null ? FLAG_PARENT_URL : 0) | (anchor != null ? FLAG_ANCHOR : 0));
+        output.writePackedInt(url.getDocid());
+        output.writePackedInt(url.getParentDocid());
+        output.writePackedInt(url.getDepth());
+        output.writeByte(url.getPriority());
+        output.writePackedInt(dictionary.getId(urlString.substring(0, pathStart)));
+        writeBytes(output, urlString.substring(pathStart));
+        if (parentUrl != null) {
+            writeBytes(output, parentUrl);
+        }
+        if (anchor != null) {
+            writeBytes(output, anchor);
+        }
+    }
+
+    private String dictionary(int id) {
+        if (dictionary == null) {
+            throw new IllegalStateException("Compact URL record found but no URL prefix dictionary is configured");
+        }
+        return dictionary.getPrefix(id);
+    }
+
+    // Strings are written as packed length and UTF-8 bytes
+    private static void writeBytes(TupleOutput output, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        output.writePackedInt(bytes.length);
+        output.writeFast(bytes);
+    }
+
+    private static String readBytes(TupleInput input) {
+        byte[] bytes = new byte[input.readPackedInt()];
+        input.readFast(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
 }
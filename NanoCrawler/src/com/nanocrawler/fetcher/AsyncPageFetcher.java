@@ -0,0 +1,283 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.fetcher;
+
+import com.nanocrawler.data.CustomFetchStatus;
+import com.nanocrawler.data.PageFetchResult;
+import com.nanocrawler.urlmanipulation.WebURL;
+import com.nanocrawler.util.CrawlConfig;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.entity.ContentBufferEntity;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Non-blocking page fetcher on an NIO HTTP client. Fetches return right away with a future, so a few threads
+// can keep thousands of fetches outstanding. Status code handling, size limits and redirects are the same as
+// in the blocking page fetcher, whose checks and politeness scheduler are shared. The response body is buffered
+// in memory (at most the max download size) before the future completes. Futures are completed on the client's
+// I/O threads, so slow work should be attached with an executor (e.g. thenApplyAsync)
+public class AsyncPageFetcher {
+
+    protected static final Logger logger = Logger.getLogger(AsyncPageFetcher.class);
+
+    protected final CloseableHttpAsyncClient httpClient;
+    protected final PoolingNHttpClientConnectionManager connectionManager;
+    protected final PageFetcher pageFetcher;
+    protected final PolitenessScheduler politenessScheduler;
+
+    // Starts the fetches that have to wait for their politeness delay
+    protected final ScheduledExecutorService delayedFetches;
+
+    private final CrawlConfig config;
+
+    // Constructor, checks and politeness delays are shared with the given blocking fetcher
+    public AsyncPageFetcher(CrawlConfig config, PageFetcher pageFetcher) throws IOException {
+        this.config = config;
+        this.pageFetcher = pageFetcher;
+        this.politenessScheduler = pageFetcher.getPolitenessScheduler();
+
+        RegistryBuilder<SchemeIOSessionStrategy> schemeRegistryBuilder = RegistryBuilder.create();
+        schemeRegistryBuilder.register("http", NoopIOSessionStrategy.INSTANCE);
+
+        if (config.isIncludeHttpsPages()) {
+            try {
+                schemeRegistryBuilder.register("https", new SSLIOSessionStrategy(PageFetcher.createSSLContext()));
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setSoTimeout(config.getSocketTimeout())
+                .setConnectTimeout(config.getConnectionTimeout())
+                .build();
+        connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig), schemeRegistryBuilder.build());
+        connectionManager.setMaxTotal(config.getMaxTotalConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerHost());
+
+        httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(pageFetcher.requestConfig)
+                .build();
+
+        delayedFetches = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "AsyncFetchScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Starts the I/O dispatch threads of the client
+    public void initialize() {
+        httpClient.start();
+    }
+
+    // Fetches header and body of a page given the URL, the fetch starts after the host's politeness delay
+    public CompletableFuture<PageFetchResult> fetchHeader(WebURL webUrl) {
+        CompletableFuture<PageFetchResult> result = new CompletableFuture<>();
+        long waitTime = politenessScheduler.reserveFetchSlot(politenessScheduler.getPolitenessKey(webUrl));
+        if (waitTime > 0) {
+            delayedFetches.schedule(() -> execute(webUrl, result), waitTime, TimeUnit.MILLISECONDS);
+        } else {
+            execute(webUrl, result);
+        }
+        return result;
+    }
+
+    // Sends the request and completes the result when the response has been received
+    private void execute(WebURL webUrl, CompletableFuture<PageFetchResult> result) {
+        if (result.isDone()) {
+            return;
+        }
+
+        PageFetchResult fetchResult = new PageFetchResult();
+        String toFetchURL = webUrl.getURL();
+
+        try {
+            HttpGet get = new HttpGet(toFetchURL);
+            get.setConfig(pageFetcher.requestConfig);
+            get.setHeader("User-Agent", config.getUserAgentString());
+
+            BoundedResponseConsumer consumer = new BoundedResponseConsumer(config.getMaxDownloadSize());
+            Future<HttpResponse> request = httpClient.execute(HttpAsyncMethods.create(get), consumer, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    fetchResult.setEntity(response.getEntity());
+                    fetchResult.setResponseHeaders(response.getAllHeaders());
+
+                    if (pageFetcher.checkHeader(fetchResult, response, toFetchURL, get)) {
+                        pageFetcher.checkBody(fetchResult, response);
+                    }
+                    result.complete(fetchResult);
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    if (consumer.isTooBig()) {
+                        fetchResult.setStatusCode(CustomFetchStatus.PageTooBig);
+                    } else if (e instanceof IOException) {
+                        logger.error("Fatal transport error: " + e.getMessage() + " while fetching " + toFetchURL + " (link found in doc #" + webUrl.getParentDocid() + ")");
+                        fetchResult.setStatusCode(CustomFetchStatus.FatalTransportError);
+                    } else {
+                        logger.error(e.getMessage() + " while fetching " + toFetchURL);
+                        fetchResult.setStatusCode(CustomFetchStatus.UnknownError);
+                    }
+                    result.complete(fetchResult);
+                }
+
+                @Override
+                public void cancelled() {
+                    fetchResult.setStatusCode(CustomFetchStatus.UnknownError);
+                    result.complete(fetchResult);
+                }
+            });
+
+            // Cancelling the result cancels the request
+            result.whenComplete((r, t) -> {
+                if (result.isCancelled()) {
+                    request.cancel(true);
+                }
+            });
+        } catch (IllegalStateException e) {
+            // Client is not running (shut down) or the scheme is not registered
+            fetchResult.setStatusCode(CustomFetchStatus.UnknownError);
+            result.complete(fetchResult);
+        } catch (Exception e) {
+            if (e.getMessage() == null) {
+                logger.error("Error while fetching " + toFetchURL);
+            } else {
+                logger.error(e.getMessage() + " while fetching " + toFetchURL);
+            }
+            fetchResult.setStatusCode(CustomFetchStatus.UnknownError);
+            result.complete(fetchResult);
+        }
+    }
+
+    // Returns number of fetches that are waiting for a connection or being fetched
+    public int getPendingFetches() {
+        return connectionManager.getTotalStats().getPending() + connectionManager.getTotalStats().getLeased();
+    }
+
+    // Shuts down the client, fetches still waiting for their politeness delay complete with an unknown error
+    public synchronized void shutDown() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        delayedFetches.shutdown();
+    }
+
+    // Buffers the response body up to the max download size. Larger bodies fail the request, so that they are not
+    // downloaded, and bodies of non OK responses are discarded the way the blocking fetcher aborts them
+    private static class BoundedResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+        private final int maxSize;
+        private volatile HttpResponse response;
+        private volatile SimpleInputBuffer buffer;
+        private volatile boolean tooBig = false;
+        private ByteBuffer discardBuffer;
+
+        BoundedResponseConsumer(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        boolean isTooBig() {
+            return tooBig;
+        }
+
+        @Override
+        protected void onResponseReceived(HttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+            if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+                response.setEntity(null);
+                return;
+            }
+            long length = entity.getContentLength();
+            if (length > maxSize) {
+                tooBig = true;
+                throw new IOException("Content length " + length + " exceeds max download size");
+            }
+            buffer = new SimpleInputBuffer(length > 0 ? (int) length : 4096, HeapByteBufferAllocator.INSTANCE);
+            response.setEntity(new ContentBufferEntity(entity, buffer));
+        }
+
+        @Override
+        protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+            if (buffer == null) {
+                if (discardBuffer == null) {
+                    discardBuffer = ByteBuffer.allocate(4096);
+                }
+                while (decoder.read(discardBuffer) > 0) {
+                    discardBuffer.clear();
+                }
+                return;
+            }
+            buffer.consumeContent(decoder);
+            if (buffer.length() > maxSize) {
+                tooBig = true;
+                throw new IOException("Content exceeds max download size");
+            }
+        }
+
+        @Override
+        protected HttpResponse buildResult(HttpContext context) {
+            return response;
+        }
+
+        @Override
+        protected void releaseResources() {
+            response = null;
+            buffer = null;
+            discardBuffer = null;
+        }
+    }
+}
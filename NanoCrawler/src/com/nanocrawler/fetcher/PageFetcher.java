@@ -42,7 +42,6 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.io.IOException;
-import java.util.Date;
 
 // Page fetcher class
 public class PageFetcher {
@@ -51,8 +50,7 @@ public class PageFetcher {
 
     protected HttpClient httpClient;
     protected final RequestConfig requestConfig;
-    protected final Object mutex = new Object();
-    protected long lastFetchTime = 0;
+    protected final PolitenessScheduler politenessScheduler;
 
     protected PoolingHttpClientConnectionManager connectionManager;
     protected IdleConnectionMonitorThread connectionMonitorThread = null;
@@ -66,9 +64,15 @@ public class PageFetcher {
         return httpClient;
     }
 
+    // Returns per-host politeness scheduler used for delaying the fetches
+    public PolitenessScheduler getPolitenessScheduler() {
+        return politenessScheduler;
+    }
+
     // Constructor
     public PageFetcher(CrawlConfig config) {
         this.config = config;
+        this.politenessScheduler = new PolitenessScheduler(config);
 
         requestConfig = RequestConfig.custom()
                 .setCookieSpec(CookieSpecs.BROWSER_COMPATIBILITY)
@@ -81,25 +85,7 @@ public class PageFetcher {
 
         if (config.isIncludeHttpsPages()) {
             try {
-                SSLContext sslContext = SSLContext.getInstance("TLS");
-                TrustManager[] trustAllCerts = new TrustManager[]{
-                        new X509TrustManager() {
-                            public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                                return null;
-                            }
-
-                            public void checkClientTrusted(
-                                    java.security.cert.X509Certificate[] certs, String authType) {
-                            }
-
-                            public void checkServerTrusted(
-                                    java.security.cert.X509Certificate[] certs, String authType) {
-                            }
-                        }
-                };
-
-                sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
-                SSLConnectionSocketFactory sf = new SSLConnectionSocketFactory(sslContext);
+                SSLConnectionSocketFactory sf = new SSLConnectionSocketFactory(createSSLContext());
                 schemeRegistryBuilder.register("https", sf);
             } catch (Exception ex) {
                 ex.printStackTrace();
@@ -112,6 +98,29 @@ public class PageFetcher {
         httpClient = HttpClientBuilder.create().setConnectionManager(connectionManager).build();
     }
 
+    // Creates the SSL context for https pages, all certificates are trusted
+    protected static SSLContext createSSLContext() throws Exception {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        TrustManager[] trustAllCerts = new TrustManager[]{
+                new X509TrustManager() {
+                    public java.security.cert.X509Certificate[] getAcceptedIssuers() {
+                        return null;
+                    }
+
+                    public void checkClientTrusted(
+                            java.security.cert.X509Certificate[] certs, String authType) {
+                    }
+
+                    public void checkServerTrusted(
+                            java.security.cert.X509Certificate[] certs, String authType) {
+                    }
+                }
+        };
+
+        sslContext.init(null, trustAllCerts, new java.security.SecureRandom());
+        return sslContext;
+    }
+
     // Initializes fetcher and starts connection monitoring
     public void initialize() {
         if (connectionMonitorThread == null) {
@@ -120,20 +129,14 @@ public class PageFetcher {
         connectionMonitorThread.start();
     }
 
-    // Waits for the next fetch start - single fetcher, called from several crawlers, hence mutex object is used
-    private void waitForFetchStart() throws InterruptedException {
-        synchronized (mutex) {
-            long now = (new Date()).getTime();
-            // TO_DO: CRAWL DELAY HERE!
-            if (now - lastFetchTime < config.getPolitenessDelay()) {
-                Thread.sleep(config.getPolitenessDelay() - (now - lastFetchTime));
-            }
-            lastFetchTime = (new Date()).getTime();
-        }
+    // Waits for the next fetch start - the politeness delay is kept per host, so crawlers only wait for their own host
+    private void waitForFetchStart(WebURL webUrl) throws InterruptedException {
+        // TO_DO: CRAWL DELAY HERE!
+        politenessScheduler.waitForFetchSlot(webUrl);
     }
 
     // Checks the header and returns true / false depending on status code from the server
-    private boolean checkHeader(PageFetchResult fetchResult, HttpResponse response, String toFetchURL, HttpGet get) {
+    protected boolean checkHeader(PageFetchResult fetchResult, HttpResponse response, String toFetchURL, HttpGet get) {
         boolean headerOk = false;
 
         int statusCode = response.getStatusLine().getStatusCode();
@@ -167,7 +170,7 @@ public class PageFetcher {
     }
 
     // Checks content length of the the body of the response (and if there is one)
-    private boolean checkBody(PageFetchResult fetchResult, HttpResponse response) {
+    protected boolean checkBody(PageFetchResult fetchResult, HttpResponse response) {
         boolean bodyOk = false;
         if (fetchResult.getEntity() != null) {
             long size = fetchResult.getEntity().getContentLength();
@@ -204,7 +207,7 @@ public class PageFetcher {
             get.setConfig(requestConfig);
             get.setHeader("User-Agent", config.getUserAgentString());
 
-            waitForFetchStart();
+            waitForFetchStart(webUrl);
 
             HttpResponse response = httpClient.execute(get);
             fetchResult.setEntity(response.getEntity());
@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.fetcher;
+
+import com.nanocrawler.urlmanipulation.WebURL;
+import com.nanocrawler.util.CrawlConfig;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Keeps the next allowed fetch time per host (or per registered domain) so that crawler threads
+// only have to wait for the politeness delay of their own host instead of a global one
+public class PolitenessScheduler {
+
+    // Hosts that have not been fetched for this long are forgotten
+    private static final long IDLE_HOST_EXPIRATION = 60 * 1000L;
+
+    // How often (in reservations) the idle hosts are purged
+    private static final int PURGE_INTERVAL = 10000;
+
+    protected final ConcurrentHashMap<String, Long> nextFetchTimes = new ConcurrentHashMap<>();
+    protected final AtomicInteger reservations = new AtomicInteger();
+
+    private final CrawlConfig config;
+
+    // Constructor
+    public PolitenessScheduler(CrawlConfig config) {
+        this.config = config;
+    }
+
+    // Returns the key the politeness delay is applied to, i.e. full host name or registered domain
+    public String getPolitenessKey(WebURL url) {
+        String subDomain = url.getSubDomain();
+        if (config.isPolitenessPerRegisteredDomain() || subDomain == null || subDomain.isEmpty()) {
+            return url.getDomain();
+        }
+        return subDomain + "." + url.getDomain();
+    }
+
+    // Reserves the next fetch slot for the key and returns how many milliseconds the caller has to wait before fetching
+    public long reserveFetchSlot(String key) {
+        final long now = System.currentTimeMillis();
+        final long delay = config.getPolitenessDelay();
+        final long[] start = new long[1];
+
+        nextFetchTimes.compute(key, (k, next) -> {
+            start[0] = (next == null) ? now : Math.max(now, next);
+            return start[0] + delay;
+        });
+
+        if (reservations.incrementAndGet() % PURGE_INTERVAL == 0) {
+            purgeIdleHosts(now);
+        }
+
+        return start[0] - now;
+    }
+
+    // Waits until fetching from the URL's host is allowed
+    public void waitForFetchSlot(WebURL url) throws InterruptedException {
+        long waitTime = reserveFetchSlot(getPolitenessKey(url));
+        if (waitTime > 0) {
+            Thread.sleep(waitTime);
+        }
+    }
+
+    // Returns the earliest time a fetch for the key may start, 0 if the key has no pending delay
+    public long getNextFetchTime(String key) {
+        Long next = nextFetchTimes.get(key);
+        return next == null ? 0 : next;
+    }
+
+    // Returns number of hosts currently tracked
+    public int getHostCount() {
+        return nextFetchTimes.size();
+    }
+
+    // Removes hosts whose politeness window has long passed to keep the map bounded
+    protected void purgeIdleHosts(long now) {
+        nextFetchTimes.entrySet().removeIf(e -> e.getValue() < now - IDLE_HOST_EXPIRATION);
+    }
+}
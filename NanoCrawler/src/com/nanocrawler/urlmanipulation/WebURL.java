@@ -21,6 +21,7 @@ package com.nanocrawler.urlmanipulation;
 import com.nanocrawler.util.CrawlConfig;
 
 import java.io.Serializable;
+import java.util.function.IntFunction;
 
 import com.sleepycat.persist.model.Entity;
 import com.sleepycat.persist.model.PrimaryKey;
@@ -35,6 +36,8 @@ public class WebURL implements Serializable {
     private int docid;
     private int parentDocid;
     private String parentUrl;
+    // Looks up the parent URL by parent doc ID when the URL was stored without it
+    private transient IntFunction<String> parentUrlResolver;
     private short depth;
     private String domain;
     private String subDomain;
@@ -46,6 +49,21 @@ public class WebURL implements Serializable {
     public WebURL() {
     }
 
+    // Copy constructor
+    public WebURL(WebURL other) {
+        this.url = other.url;
+        this.docid = other.docid;
+        this.parentDocid = other.parentDocid;
+        this.parentUrl = other.parentUrl;
+        this.parentUrlResolver = other.parentUrlResolver;
+        this.depth = other.depth;
+        this.domain = other.domain;
+        this.subDomain = other.subDomain;
+        this.path = other.path;
+        this.anchor = other.anchor;
+        this.priority = other.priority;
+    }
+
     // Doc id associated to this URL
     public int getDocid() {
         return docid;
@@ -123,8 +141,12 @@ public class WebURL implements Serializable {
         this.parentDocid = parentDocid;
     }
 
-    // Parent URL (aka source link) for the page
+    // Parent URL (aka source link) for the page, resolved from the parent doc ID on first use if needed
     public String getParentUrl() {
+        if (parentUrl == null && parentUrlResolver != null && parentDocid > 0) {
+            parentUrl = parentUrlResolver.apply(parentDocid);
+            parentUrlResolver = null;
+        }
         return parentUrl;
     }
 
@@ -132,6 +154,10 @@ public class WebURL implements Serializable {
         this.parentUrl = parentUrl;
     }
 
+    public void setParentUrlResolver(IntFunction<String> parentUrlResolver) {
+        this.parentUrlResolver = parentUrlResolver;
+    }
+
     // Crawl depth for determining the links importance in the link hierarchy (after the priority
     public short getDepth() {
         return depth;
@@ -21,6 +21,50 @@ package com.nanocrawler.util;
 // Singleton class containing the configurations for the whole crawler
 public class CrawlConfig {
 
+    // Storage backends for the frontier, doc ID server and statistics
+    public enum StorageBackend {
+        // Berkeley DB environment in the crawl storage folder
+        BERKELEY_DB,
+        // Everything is kept in memory, nothing is persisted
+        IN_MEMORY
+    }
+
+    // Storage backends for the doc ID server
+    public enum DocIDBackend {
+        // Berkeley DB database in the crawl storage folder
+        BERKELEY_DB,
+        // Off-heap hash table of URL fingerprints, snapshotted to a memory-mapped file
+        OFF_HEAP
+    }
+
+    // Storage engines for the frontier's work queue
+    public enum FrontierQueueBackend {
+        // Berkeley DB database in the crawl storage folder
+        BERKELEY_DB,
+        // Segmented append-only memory-mapped log files, one segment chain per priority / depth bucket
+        MAPPED_LOG
+    }
+
+    // What crawlers do with a page when the asynchronous visit queue is full
+    public enum VisitQueueFullPolicy {
+        // Wait until there is room in the queue
+        BLOCK,
+        // Skip visit() for the page
+        DROP,
+        // Call visit() in the crawler thread
+        CALLER_RUNS
+    }
+
+    // When the body text of HTML pages is extracted
+    public enum HtmlTextMode {
+        // While parsing the page
+        EAGER,
+        // From the page content when the text is first asked for
+        LAZY,
+        // Never, text of the parsed pages is null
+        DISCARD
+    }
+
     private String crawlStorageFolder;
 
     private int maxDepthOfCrawling = -1;
@@ -31,6 +75,48 @@ public class CrawlConfig {
     // In case robots.txt won't provide crawl-delay directive
     private int politenessDelay = 200;
 
+    // Politeness delay is applied per host by default, setting this applies it per registered domain instead
+    private boolean politenessPerRegisteredDomain = false;
+
+    // Keeps a separate crawl queue per host and hands out only URLs whose host is outside its politeness window
+    private boolean hostPartitionedFrontier = false;
+
+    // Admission control: when the frontier reaches frontierHighWatermark queued URLs (0 disables), new URLs are shed
+    // until it has drained to frontierLowWatermark (0 means 80% of the high watermark). While shedding, URLs with priority
+    // number below admissionPriorityThreshold or depth at most admissionMaxDepth are kept and the rest are sampled
+    // at admissionSampleRate
+    private int frontierHighWatermark = 0;
+    private int frontierLowWatermark = 0;
+    private int admissionPriorityThreshold = 0;
+    private int admissionMaxDepth = 1;
+    private double admissionSampleRate = 0.1;
+
+    // Storage backend for the crawl state, doc ID store and frontier queue engines are selected on top of it
+    private StorageBackend storageBackend = StorageBackend.BERKELEY_DB;
+
+    // Number of queued URLs kept in memory at the head of the frontier, only the URLs that do not fit
+    // are stored in the DB. 0 keeps all of the queued URLs in the DB
+    private int frontierBufferSize = 50000;
+
+    // Queued URLs are stored in compact format (packed ints, host prefix dictionary, parent URL looked up from doc ID
+    // when the doc ID server keeps URLs). Queued anchors are cut to maxQueuedAnchorLength characters, -1 keeps them whole
+    private boolean compactURLEncoding = true;
+    private int maxQueuedAnchorLength = -1;
+
+    // Storage engine of the work queue, the mapped log does not support host partitioned frontier and does not use the
+    // in-memory buffer. Log segments are logQueueSegmentSize bytes
+    private FrontierQueueBackend frontierQueueBackend = FrontierQueueBackend.BERKELEY_DB;
+    private int logQueueSegmentSize = 16 * 1024 * 1024;
+
+    // Keeps the crawl state (frontier, doc IDs, counters) in the storage folder over restarts and continues from it,
+    // the frontier partitioning must not be changed between resumed runs. State is checkpointed to disk periodically
+    private boolean resumableCrawling = false;
+    private int resumeCheckpointInterval = 60;
+
+    // Time (in milliseconds) a crawler has to process a URL handed out to it before the URL is put back to the queue,
+    // 0 disables the leases and URLs are dropped from the frontier as soon as they are handed out
+    private int urlLeaseTimeout = 10 * 60 * 1000;
+
     private boolean includeHttpsPages = true;
     private boolean includeBinaryContentInCrawling = false;
 
@@ -42,8 +128,53 @@ public class CrawlConfig {
 
     private int maxOutgoingLinksToFollow = 5000;
 
+    // Parses HTML pages in a single streaming pass collecting title, links and text instead of building a DOM tree.
+    // Links are then listed in document order instead of grouped by element
+    private boolean streamingHtmlParsing = false;
+
+    // Body text extraction of HTML pages and whether the raw HTML is kept for the parsed pages. Crawls that only follow
+    // links can skip both, then the parsed page holds little more than the fetched content bytes
+    private HtmlTextMode htmlTextMode = HtmlTextMode.EAGER;
+    private boolean retainHtml = true;
+
+    // Number of URLs a crawler thread takes from the frontier at once
+    private int fetchBatchSize = 1;
+
+    // Number of crawlers when the crawl is started with a crawler factory, and whether they run in virtual threads
+    // (Java 21 or later). With thousands of virtual thread crawlers the connection limits above need raising too
+    private int numberOfCrawlers = 10;
+    private boolean virtualThreadCrawlers = false;
+
+    // Runs the crawl started with a crawler factory as a pipeline: fetch, parse and link processing stages with their
+    // own thread pools and bounded queues between them. Number of crawlers is not used then, each stage thread has its
+    // own crawler instance. Fetch stage uses virtual threads if those are enabled
+    private boolean pipelinedCrawling = false;
+    private int pipelineFetchThreads = 50;
+    private int pipelineParseThreads = 4;
+    private int pipelineLinkThreads = 2;
+    private int pipelineQueueCapacity = 100;
+
+    // Hands the pages to visit() in separate consumer threads through a bounded queue instead of calling it in the
+    // crawler thread. Then visit() of a crawler instance may be called from several threads at the same time
+    private boolean asyncVisitDispatch = false;
+    private int visitDispatchThreads = 2;
+    private int visitQueueCapacity = 1000;
+    private VisitQueueFullPolicy visitQueueFullPolicy = VisitQueueFullPolicy.BLOCK;
+
     private int maxDownloadSize = 1048576;
 
+    // Expected number of URLs for sizing the Bloom filter in front of the doc ID DB, 0 disables the filter
+    private long docIdBloomFilterExpectedUrls = 0;
+    private double docIdBloomFilterFalsePositiveRate = 0.01;
+
+    // Keys the doc ID DB on 64-bit URL fingerprints instead of full URLs, optionally keeping the URLs in a side store
+    private boolean docIdFingerprintKeys = false;
+    private boolean docIdFingerprintKeepUrls = false;
+
+    // Doc ID storage backend and the number of URLs the off-heap backend is sized for initially
+    private DocIDBackend docIdBackend = DocIDBackend.BERKELEY_DB;
+    private long offHeapDocIdExpectedUrls = 1000000;
+
     private boolean followRedirects = true;
 
     private String tldResourceFilePath = "";
@@ -75,6 +206,69 @@ public class CrawlConfig {
         if (maxDepthOfCrawling > Short.MAX_VALUE) {
             throw new Exception("Maximum value for crawl depth is " + Short.MAX_VALUE);
         }
+        if (docIdBloomFilterExpectedUrls > 0 && (docIdBloomFilterFalsePositiveRate <= 0 || docIdBloomFilterFalsePositiveRate >= 1)) {
+            throw new Exception("Bloom filter false positive rate should be between 0 and 1: " + docIdBloomFilterFalsePositiveRate);
+        }
+        if (docIdBackend == null) {
+            throw new Exception("Doc ID backend is not set in the CrawlConfig.");
+        }
+        if (frontierBufferSize < 0) {
+            throw new Exception("Invalid value for frontier buffer size: " + frontierBufferSize);
+        }
+        if (frontierHighWatermark < 0 || frontierLowWatermark < 0 || (frontierHighWatermark > 0 && frontierLowWatermark >= frontierHighWatermark)) {
+            throw new Exception("Invalid frontier watermarks, low: " + frontierLowWatermark + ", high: " + frontierHighWatermark);
+        }
+        if (admissionSampleRate < 0 || admissionSampleRate > 1) {
+            throw new Exception("Invalid value for admission sample rate: " + admissionSampleRate);
+        }
+        if (storageBackend == null) {
+            throw new Exception("Storage backend must be set");
+        }
+        if (storageBackend == StorageBackend.IN_MEMORY && resumableCrawling) {
+            throw new Exception("In-memory storage backend cannot be used for resumable crawling");
+        }
+        if (maxQueuedAnchorLength < -1) {
+            throw new Exception("Invalid value for max queued anchor length: " + maxQueuedAnchorLength);
+        }
+        if (frontierQueueBackend == null) {
+            throw new Exception("Frontier queue backend must be set");
+        }
+        if (frontierQueueBackend == FrontierQueueBackend.MAPPED_LOG && hostPartitionedFrontier) {
+            throw new Exception("Mapped log frontier queue does not support host partitioned frontier");
+        }
+        if (logQueueSegmentSize < 4096) {
+            throw new Exception("Invalid value for log queue segment size: " + logQueueSegmentSize);
+        }
+        if (resumeCheckpointInterval < 1) {
+            throw new Exception("Invalid value for resume checkpoint interval: " + resumeCheckpointInterval);
+        }
+        if (urlLeaseTimeout < 0) {
+            throw new Exception("Invalid value for URL lease timeout: " + urlLeaseTimeout);
+        }
+        if (fetchBatchSize < 1) {
+            throw new Exception("Invalid value for fetch batch size: " + fetchBatchSize);
+        }
+        if (numberOfCrawlers < 1) {
+            throw new Exception("Invalid value for number of crawlers: " + numberOfCrawlers);
+        }
+        if (pipelineFetchThreads < 1 || pipelineParseThreads < 1 || pipelineLinkThreads < 1) {
+            throw new Exception("Invalid pipeline thread counts, fetch: " + pipelineFetchThreads + ", parse: " + pipelineParseThreads + ", link: " + pipelineLinkThreads);
+        }
+        if (pipelineQueueCapacity < 1) {
+            throw new Exception("Invalid value for pipeline queue capacity: " + pipelineQueueCapacity);
+        }
+        if (visitDispatchThreads < 1) {
+            throw new Exception("Invalid value for visit dispatch threads: " + visitDispatchThreads);
+        }
+        if (visitQueueCapacity < 1) {
+            throw new Exception("Invalid value for visit queue capacity: " + visitQueueCapacity);
+        }
+        if (htmlTextMode == null) {
+            throw new Exception("HTML text mode must be set");
+        }
+        if (visitQueueFullPolicy == null) {
+            throw new Exception("Visit queue full policy must be set");
+        }
     }
 
     // Setters / getters for the configuration
@@ -123,6 +317,134 @@ public class CrawlConfig {
         this.politenessDelay = politenessDelay;
     }
 
+    public boolean isPolitenessPerRegisteredDomain() {
+        return politenessPerRegisteredDomain;
+    }
+
+    public void setPolitenessPerRegisteredDomain(boolean politenessPerRegisteredDomain) {
+        this.politenessPerRegisteredDomain = politenessPerRegisteredDomain;
+    }
+
+    public boolean isHostPartitionedFrontier() {
+        return hostPartitionedFrontier;
+    }
+
+    public void setHostPartitionedFrontier(boolean hostPartitionedFrontier) {
+        this.hostPartitionedFrontier = hostPartitionedFrontier;
+    }
+
+    public int getFrontierHighWatermark() {
+        return frontierHighWatermark;
+    }
+
+    public void setFrontierHighWatermark(int frontierHighWatermark) {
+        this.frontierHighWatermark = frontierHighWatermark;
+    }
+
+    public int getFrontierLowWatermark() {
+        return frontierLowWatermark;
+    }
+
+    public void setFrontierLowWatermark(int frontierLowWatermark) {
+        this.frontierLowWatermark = frontierLowWatermark;
+    }
+
+    public int getAdmissionPriorityThreshold() {
+        return admissionPriorityThreshold;
+    }
+
+    public void setAdmissionPriorityThreshold(int admissionPriorityThreshold) {
+        this.admissionPriorityThreshold = admissionPriorityThreshold;
+    }
+
+    public int getAdmissionMaxDepth() {
+        return admissionMaxDepth;
+    }
+
+    public void setAdmissionMaxDepth(int admissionMaxDepth) {
+        this.admissionMaxDepth = admissionMaxDepth;
+    }
+
+    public double getAdmissionSampleRate() {
+        return admissionSampleRate;
+    }
+
+    public void setAdmissionSampleRate(double admissionSampleRate) {
+        this.admissionSampleRate = admissionSampleRate;
+    }
+
+    public StorageBackend getStorageBackend() {
+        return storageBackend;
+    }
+
+    public void setStorageBackend(StorageBackend storageBackend) {
+        this.storageBackend = storageBackend;
+    }
+
+    public int getFrontierBufferSize() {
+        return frontierBufferSize;
+    }
+
+    public void setFrontierBufferSize(int frontierBufferSize) {
+        this.frontierBufferSize = frontierBufferSize;
+    }
+
+    public boolean isCompactURLEncoding() {
+        return compactURLEncoding;
+    }
+
+    public void setCompactURLEncoding(boolean compactURLEncoding) {
+        this.compactURLEncoding = compactURLEncoding;
+    }
+
+    public int getMaxQueuedAnchorLength() {
+        return maxQueuedAnchorLength;
+    }
+
+    public void setMaxQueuedAnchorLength(int maxQueuedAnchorLength) {
+        this.maxQueuedAnchorLength = maxQueuedAnchorLength;
+    }
+
+    public FrontierQueueBackend getFrontierQueueBackend() {
+        return frontierQueueBackend;
+    }
+
+    public void setFrontierQueueBackend(FrontierQueueBackend frontierQueueBackend) {
+        this.frontierQueueBackend = frontierQueueBackend;
+    }
+
+    public int getLogQueueSegmentSize() {
+        return logQueueSegmentSize;
+    }
+
+    public void setLogQueueSegmentSize(int logQueueSegmentSize) {
+        this.logQueueSegmentSize = logQueueSegmentSize;
+    }
+
+    public boolean isResumableCrawling() {
+        return resumableCrawling;
+    }
+
+    public void setResumableCrawling(boolean resumableCrawling) {
+        this.resumableCrawling = resumableCrawling;
+    }
+
+    public int getResumeCheckpointInterval() {
+        return resumeCheckpointInterval;
+    }
+
+    public void setResumeCheckpointInterval(int resumeCheckpointInterval) {
+        this.resumeCheckpointInterval = resumeCheckpointInterval;
+    }
+
+    public int getUrlLeaseTimeout() {
+        return urlLeaseTimeout;
+    }
+
+    public void setUrlLeaseTimeout(int urlLeaseTimeout) {
+        this.urlLeaseTimeout = urlLeaseTimeout;
+    }
+
     public boolean isIncludeHttpsPages() {
         return includeHttpsPages;
     }
@@ -171,6 +493,30 @@ public class CrawlConfig {
         this.connectionTimeout = connectionTimeout;
     }
 
+    public boolean isStreamingHtmlParsing() {
+        return streamingHtmlParsing;
+    }
+
+    public void setStreamingHtmlParsing(boolean streamingHtmlParsing) {
+        this.streamingHtmlParsing = streamingHtmlParsing;
+    }
+
+    public HtmlTextMode getHtmlTextMode() {
+        return htmlTextMode;
+    }
+
+    public void setHtmlTextMode(HtmlTextMode htmlTextMode) {
+        this.htmlTextMode = htmlTextMode;
+    }
+
+    public boolean isRetainHtml() {
+        return retainHtml;
+    }
+
+    public void setRetainHtml(boolean retainHtml) {
+        this.retainHtml = retainHtml;
+    }
+
     public int getMaxOutgoingLinksToFollow() {
         return maxOutgoingLinksToFollow;
     }
@@ -179,6 +525,102 @@ public class CrawlConfig {
         this.maxOutgoingLinksToFollow = maxOutgoingLinksToFollow;
     }
 
+    public int getFetchBatchSize() {
+        return fetchBatchSize;
+    }
+
+    public void setFetchBatchSize(int fetchBatchSize) {
+        this.fetchBatchSize = fetchBatchSize;
+    }
+
+    public int getNumberOfCrawlers() {
+        return numberOfCrawlers;
+    }
+
+    public void setNumberOfCrawlers(int numberOfCrawlers) {
+        this.numberOfCrawlers = numberOfCrawlers;
+    }
+
+    public boolean isVirtualThreadCrawlers() {
+        return virtualThreadCrawlers;
+    }
+
+    public void setVirtualThreadCrawlers(boolean virtualThreadCrawlers) {
+        this.virtualThreadCrawlers = virtualThreadCrawlers;
+    }
+
+    public boolean isPipelinedCrawling() {
+        return pipelinedCrawling;
+    }
+
+    public void setPipelinedCrawling(boolean pipelinedCrawling) {
+        this.pipelinedCrawling = pipelinedCrawling;
+    }
+
+    public int getPipelineFetchThreads() {
+        return pipelineFetchThreads;
+    }
+
+    public void setPipelineFetchThreads(int pipelineFetchThreads) {
+        this.pipelineFetchThreads = pipelineFetchThreads;
+    }
+
+    public int getPipelineParseThreads() {
+        return pipelineParseThreads;
+    }
+
+    public void setPipelineParseThreads(int pipelineParseThreads) {
+        this.pipelineParseThreads = pipelineParseThreads;
+    }
+
+    public int getPipelineLinkThreads() {
+        return pipelineLinkThreads;
+    }
+
+    public void setPipelineLinkThreads(int pipelineLinkThreads) {
+        this.pipelineLinkThreads = pipelineLinkThreads;
+    }
+
+    public int getPipelineQueueCapacity() {
+        return pipelineQueueCapacity;
+    }
+
+    public void setPipelineQueueCapacity(int pipelineQueueCapacity) {
+        this.pipelineQueueCapacity = pipelineQueueCapacity;
+    }
+
+    public boolean isAsyncVisitDispatch() {
+        return asyncVisitDispatch;
+    }
+
+    public void setAsyncVisitDispatch(boolean asyncVisitDispatch) {
+        this.asyncVisitDispatch = asyncVisitDispatch;
+    }
+
+    public int getVisitDispatchThreads() {
+        return visitDispatchThreads;
+    }
+
+    public void setVisitDispatchThreads(int visitDispatchThreads) {
+        this.visitDispatchThreads = visitDispatchThreads;
+    }
+
+    public int getVisitQueueCapacity() {
+        return visitQueueCapacity;
+    }
+
+    public void setVisitQueueCapacity(int visitQueueCapacity) {
+        this.visitQueueCapacity = visitQueueCapacity;
+    }
+
+    public VisitQueueFullPolicy getVisitQueueFullPolicy() {
+        return visitQueueFullPolicy;
+    }
+
+    public void setVisitQueueFullPolicy(VisitQueueFullPolicy visitQueueFullPolicy) {
+        this.visitQueueFullPolicy = visitQueueFullPolicy;
+    }
+
     public int getMaxDownloadSize() {
         return maxDownloadSize;
     }
@@ -187,6 +629,54 @@ public class CrawlConfig {
         this.maxDownloadSize = maxDownloadSize;
     }
 
+    public long getDocIdBloomFilterExpectedUrls() {
+        return docIdBloomFilterExpectedUrls;
+    }
+
+    public void setDocIdBloomFilterExpectedUrls(long docIdBloomFilterExpectedUrls) {
+        this.docIdBloomFilterExpectedUrls = docIdBloomFilterExpectedUrls;
+    }
+
+    public double getDocIdBloomFilterFalsePositiveRate() {
+        return docIdBloomFilterFalsePositiveRate;
+    }
+
+    public void setDocIdBloomFilterFalsePositiveRate(double docIdBloomFilterFalsePositiveRate) {
+        this.docIdBloomFilterFalsePositiveRate = docIdBloomFilterFalsePositiveRate;
+    }
+
+    public boolean isDocIdFingerprintKeys() {
+        return docIdFingerprintKeys;
+    }
+
+    public void setDocIdFingerprintKeys(boolean docIdFingerprintKeys) {
+        this.docIdFingerprintKeys = docIdFingerprintKeys;
+    }
+
+    public boolean isDocIdFingerprintKeepUrls() {
+        return docIdFingerprintKeepUrls;
+    }
+
+    public void setDocIdFingerprintKeepUrls(boolean docIdFingerprintKeepUrls) {
+        this.docIdFingerprintKeepUrls = docIdFingerprintKeepUrls;
+    }
+
+    public DocIDBackend getDocIdBackend() {
+        return docIdBackend;
+    }
+
+    public void setDocIdBackend(DocIDBackend docIdBackend) {
+        this.docIdBackend = docIdBackend;
+    }
+
+    public long getOffHeapDocIdExpectedUrls() {
+        return offHeapDocIdExpectedUrls;
+    }
+
+    public void setOffHeapDocIdExpectedUrls(long offHeapDocIdExpectedUrls) {
+        this.offHeapDocIdExpectedUrls = offHeapDocIdExpectedUrls;
+    }
+
     public boolean isFollowRedirects() {
         return followRedirects;
     }
@@ -234,6 +724,16 @@ public class CrawlConfig {
         s += "Max depth of crawl: " + getMaxDepthOfCrawling() + "\n";
         s += "Max pages to fetch: " + getMaxPagesToFetch() + "\n";
         s += "User agent string: " + getUserAgentString() + "\n";
+        s += "Politeness delay: " + getPolitenessDelay() + "\n";
+        s += "Politeness per registered domain: " + isPolitenessPerRegisteredDomain() + "\n";
+        s += "Host partitioned frontier: " + isHostPartitionedFrontier() + "\n";
+        s += "Frontier watermarks: " + getFrontierLowWatermark() + " - " + getFrontierHighWatermark() + "\n";
+        s += "Storage backend: " + getStorageBackend() + "\n";
+        s += "Frontier buffer size: " + getFrontierBufferSize() + "\n";
+        s += "Compact URL encoding: " + isCompactURLEncoding() + "\n";
+        s += "Frontier queue backend: " + getFrontierQueueBackend() + "\n";
+        s += "Resumable crawling: " + isResumableCrawling() + "\n";
+        s += "URL lease timeout: " + getUrlLeaseTimeout() + "\n";
         s += "Include https pages: " + isIncludeHttpsPages() + "\n";
         s += "Include binary content: " + isIncludeBinaryContentInCrawling() + "\n";
         s += "Max connections per host: " + getMaxConnectionsPerHost() + "\n";
@@ -241,7 +741,24 @@ public class CrawlConfig {
         s += "Socket timeout: " + getSocketTimeout() + "\n";
         s += "Max total connections: " + getMaxTotalConnections() + "\n";
         s += "Max outgoing links to follow: " + getMaxOutgoingLinksToFollow() + "\n";
+        s += "Streaming HTML parsing: " + isStreamingHtmlParsing() + "\n";
+        s += "HTML text mode: " + getHtmlTextMode() + "\n";
+        s += "Retain HTML: " + isRetainHtml() + "\n";
+        s += "Fetch batch size: " + getFetchBatchSize() + "\n";
+        s += "Number of crawlers: " + getNumberOfCrawlers() + "\n";
+        s += "Virtual thread crawlers: " + isVirtualThreadCrawlers() + "\n";
+        s += "Pipelined crawling: " + isPipelinedCrawling() + "\n";
+        s += "Pipeline threads (fetch / parse / link): " + getPipelineFetchThreads() + " / " + getPipelineParseThreads() + " / " + getPipelineLinkThreads() + "\n";
+        s += "Pipeline queue capacity: " + getPipelineQueueCapacity() + "\n";
+        s += "Async visit dispatch: " + isAsyncVisitDispatch() + "\n";
+        s += "Visit dispatch threads: " + getVisitDispatchThreads() + "\n";
+        s += "Visit queue: " + getVisitQueueCapacity() + ", when full: " + getVisitQueueFullPolicy() + "\n";
         s += "Max download size: " + getMaxDownloadSize() + "\n";
+        s += "Doc ID Bloom filter expected URLs: " + getDocIdBloomFilterExpectedUrls() + "\n";
+        s += "Doc ID Bloom filter false positive rate: " + getDocIdBloomFilterFalsePositiveRate() + "\n";
+        s += "Doc ID fingerprint keys: " + isDocIdFingerprintKeys() + "\n";
+        s += "Doc ID fingerprint keep URLs: " + isDocIdFingerprintKeepUrls() + "\n";
+        s += "Doc ID backend: " + getDocIdBackend() + "\n";
         s += "Should follow redirects?: " + isFollowRedirects() + "\n";
         s += "Proxy host: " + getProxyHost() + "\n";
         s += "Proxy port: " + getProxyPort() + "\n";
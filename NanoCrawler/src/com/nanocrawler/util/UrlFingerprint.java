@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Based on crawler4j project by Yasser Ganjisaffar
+ */
+package com.nanocrawler.util;
+
+import java.nio.charset.StandardCharsets;
+
+// 64-bit non-cryptographic fingerprints of URLs (MurmurHash64A)
+public class UrlFingerprint {
+
+    private static final long M = 0xc6a4a7935bd1e995L;
+    private static final int R = 47;
+    private static final long SEED = 0x9747b28c5bd1e995L;
+
+    // Fingerprint of the UTF-8 bytes of the URL
+    public static long fingerprint(String url) {
+        return fingerprint(url.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Fingerprint of a byte array
+    public static long fingerprint(byte[] data) {
+        return hash64(data, 0, data.length, SEED);
+    }
+
+    // Fingerprint of a range of bytes
+    public static long fingerprint(byte[] data, int offset, int length) {
+        return hash64(data, offset, length, SEED);
+    }
+
+    // MurmurHash64A over the given range of bytes, the tail switch falls through on purpose
+    @SuppressWarnings("fallthrough")
+    public static long hash64(byte[] data, int offset, int length, long seed) {
+        long h = seed ^ (length * M);
+
+        int blocks = length >>> 3;
+        for (int i = 0; i < blocks; i++) {
+            int idx = offset + (i << 3);
+            long k = (data[idx] & 0xFFL)
+                    | ((data[idx + 1] & 0xFFL) << 8)
+                    | ((data[idx + 2] & 0xFFL) << 16)
+                    | ((data[idx + 3] & 0xFFL) << 24)
+                    | ((data[idx + 4] & 0xFFL) << 32)
+                    | ((data[idx + 5] & 0xFFL) << 40)
+                    | ((data[idx + 6] & 0xFFL) << 48)
+                    | ((data[idx + 7] & 0xFFL) << 56);
+
+            k *= M;
+            k ^= k >>> R;
+            k *= M;
+
+            h ^= k;
+            h *= M;
+        }
+
+        int tail = offset + (blocks << 3);
+        switch (length & 7) {
+            case 7:
+                h ^= (data[tail + 6] & 0xFFL) << 48;
+                // fall through
+            case 6:
+                h ^= (data[tail + 5] & 0xFFL) << 40;
+                // fall through
+            case 5:
+                h ^= (data[tail + 4] & 0xFFL) << 32;
+                // fall through
+            case 4:
+                h ^= (data[tail + 3] & 0xFFL) << 24;
+                // fall through
+            case 3:
+                h ^= (data[tail + 2] & 0xFFL) << 16;
+                // fall through
+            case 2:
+                h ^= (data[tail + 1] & 0xFFL) << 8;
+                // fall through
+            case 1:
+                h ^= (data[tail] & 0xFFL);
+                h *= M;
+        }
+
+        h ^= h >>> R;
+        h *= M;
+        h ^= h >>> R;
+        return h;
+    }
+}